@@ -0,0 +1,93 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain.benchmark;
+
+import com.unary.digitalrain.core.GlyphRenderer;
+import com.unary.digitalrain.core.RainAlphabet;
+import com.unary.digitalrain.core.RainRandom;
+import com.unary.digitalrain.core.RainSimulation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the ticks per second of the rain simulation for a range of sizes and layers. Run with
+ * the gc profiler to also get the allocation rate, which should be zero.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RainSimulationBenchmark {
+
+    private static final float TEXT_SIZE = 42;
+    private static final int GLYPH_COUNT = RainAlphabet.LATIN_1.size();
+
+    @Param({"16", "64", "256"})
+    public int columns;
+
+    @Param({"1280", "2560"})
+    public int height;
+
+    @Param({"1", "3", "6"})
+    public int layers;
+
+    @Param({"false", "true"})
+    public boolean varied;
+
+    private RainSimulation[] mSimulations;
+    private Renderer mRenderer;
+
+    @Setup
+    public void setup() {
+        mSimulations = new RainSimulation[layers];
+        mRenderer = new Renderer();
+
+        for (int i = 0; i < layers; i++) {
+            mSimulations[i] = new RainSimulation(columns, height, TEXT_SIZE, GLYPH_COUNT, new RainRandom(i),
+                    varied);
+        }
+    }
+
+    @Benchmark
+    public int tick() {
+        for (RainSimulation simulation : mSimulations) {
+            simulation.tick(mRenderer);
+        }
+
+        return mRenderer.mChecksum;
+    }
+
+    /**
+     * Renderer that only sums the characters, so none of the work is optimized away.
+     */
+    private static class Renderer implements GlyphRenderer {
+
+        private int mChecksum;
+
+        @Override
+        public void drawGlyph(int glyph, int column, int row) {
+            mChecksum += glyph + column + row;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain.core;
+
+/**
+ * Draws the characters placed by a {@link RainSimulation}. It is the only part of the rain that
+ * knows about the drawing surface.
+ */
+public interface GlyphRenderer {
+
+    /**
+     * Draw a character in a cell of the rain. Rows are counted from the top, with the baseline of
+     * the character at the bottom of the row.
+     *
+     * @param glyph  Index of the character, below the glyph count of the simulation.
+     * @param column Column of the cell.
+     * @param row    Row of the cell.
+     */
+    void drawGlyph(int glyph, int column, int row);
+}
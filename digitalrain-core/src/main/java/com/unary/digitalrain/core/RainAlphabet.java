@@ -0,0 +1,149 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain.core;
+
+import java.util.Arrays;
+
+/**
+ * The characters the rain is made of. Each alphabet is resolved once into a table of printable
+ * characters, so picking one is a single array index and nothing is drawn that would not show.
+ * Control characters, spaces and anything outside the basic plane are left out.
+ */
+public final class RainAlphabet {
+
+    /**
+     * Printable ASCII characters, from {@code !} to {@code ~}.
+     */
+    public static final RainAlphabet ASCII = new RainAlphabet(range(0x21, 0x7E));
+
+    /**
+     * Printable Latin-1 characters. This is ASCII with the accented letters and symbols, but not
+     * DEL or the C1 controls.
+     */
+    public static final RainAlphabet LATIN_1 = new RainAlphabet(range(0x21, 0x7E) + range(0xA1, 0xFF));
+
+    /**
+     * Half-width katakana and the digits, as in the classic rain.
+     */
+    public static final RainAlphabet KATAKANA = new RainAlphabet(range(0xFF66, 0xFF9D) + range('0', '9'));
+
+    /**
+     * The digits only.
+     */
+    public static final RainAlphabet DIGITS = new RainAlphabet(range('0', '9'));
+
+    private final char[] mChars;
+
+    /**
+     * Constructor to resolve the printable characters of a string.
+     *
+     * @param chars Characters of the alphabet.
+     */
+    private RainAlphabet(String chars) {
+        StringBuilder builder = new StringBuilder(chars.length());
+
+        for (int i = 0; i < chars.length(); i++) {
+            char c = chars.charAt(i);
+
+            // Each character only once
+            if (isPrintable(c) && builder.indexOf(String.valueOf(c)) < 0) {
+                builder.append(c);
+            }
+        }
+
+        mChars = new char[builder.length()];
+        builder.getChars(0, mChars.length, mChars, 0);
+    }
+
+    /**
+     * Create an alphabet from the characters of a string. Repeats and characters that would not
+     * show are left out, and ASCII is used if there are none left.
+     *
+     * @param chars Characters of the alphabet.
+     * @return Alphabet of the printable characters.
+     */
+    public static RainAlphabet of(String chars) {
+        RainAlphabet alphabet = new RainAlphabet(chars);
+        return alphabet.mChars.length > 0 ? alphabet : ASCII;
+    }
+
+    /**
+     * Get the number of characters in the alphabet.
+     *
+     * @return Character count.
+     */
+    public int size() {
+        return mChars.length;
+    }
+
+    /**
+     * Get a character of the alphabet.
+     *
+     * @param index Index of the character.
+     * @return The character.
+     */
+    public char charAt(int index) {
+        return mChars[index];
+    }
+
+    /**
+     * Get a copy of the characters of the alphabet.
+     *
+     * @return Characters in order.
+     */
+    public char[] toCharArray() {
+        return mChars.clone();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof RainAlphabet && Arrays.equals(mChars, ((RainAlphabet) obj).mChars);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(mChars);
+    }
+
+    /**
+     * Check if a character would show when drawn.
+     *
+     * @param c Character to check.
+     * @return True if printable.
+     */
+    private static boolean isPrintable(char c) {
+        return !Character.isISOControl(c) && !Character.isWhitespace(c) && !Character.isSpaceChar(c)
+                && !Character.isSurrogate(c) && Character.getType(c) != Character.FORMAT
+                && Character.isDefined(c);
+    }
+
+    /**
+     * Get a string of a range of characters.
+     *
+     * @param first First character.
+     * @param last  Last character.
+     * @return Characters in order.
+     */
+    private static String range(int first, int last) {
+        StringBuilder builder = new StringBuilder(last - first + 1);
+
+        for (int c = first; c <= last; c++) {
+            builder.append((char) c);
+        }
+
+        return builder.toString();
+    }
+}
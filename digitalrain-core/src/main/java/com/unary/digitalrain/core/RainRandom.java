@@ -0,0 +1,95 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small xorshift generator for the rain. Unlike {@link Math#random()} it is not shared between
+ * threads, so each layer can draw its numbers without contention.
+ */
+public class RainRandom {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final AtomicLong SEED_UNIQUIFIER = new AtomicLong(System.nanoTime());
+
+    private long mState;
+
+    /**
+     * Constructor that uses a seed unlikely to match any other generator.
+     */
+    public RainRandom() {
+        this(SEED_UNIQUIFIER.addAndGet(GOLDEN_GAMMA) ^ System.nanoTime());
+    }
+
+    /**
+     * Constructor for a repeatable sequence of numbers.
+     *
+     * @param seed Initial seed.
+     */
+    public RainRandom(long seed) {
+        setSeed(seed);
+    }
+
+    /**
+     * Reset the generator. The seed is mixed with SplitMix64 so that similar seeds still give
+     * unrelated sequences.
+     *
+     * @param seed Initial seed.
+     */
+    public void setSeed(long seed) {
+        long z = seed + GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+
+        // Xorshift is stuck at zero
+        mState = z != 0 ? z : GOLDEN_GAMMA;
+    }
+
+    /**
+     * Get the next 64 random bits.
+     *
+     * @return Random long.
+     */
+    public long nextLong() {
+        long x = mState;
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+
+        return mState = x;
+    }
+
+    /**
+     * Get a random float between 0 inclusive and 1 exclusive.
+     *
+     * @return Random float.
+     */
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    /**
+     * Get a random int between 0 inclusive and the bound exclusive.
+     *
+     * @param bound Upper bound. Must be positive.
+     * @return Random int.
+     */
+    public int nextInt(int bound) {
+        return (int) (((nextLong() >>> 33) * bound) >>> 31);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain.core;
+
+/**
+ * The falling drops of the rain, without any drawing. Each column has a drop that moves down,
+ * picking a random character for every row it reaches, and starts again at the top at random once
+ * it has fallen past the bottom.
+ *
+ * <p>The columns are kept as parallel arrays of their position, speed and remaining length, so a
+ * tick is one pass over primitives with nothing allocated. Drops either all fall a row per tick
+ * and reach the bottom, or each falls at its own speed and ends after a length of its own. The
+ * length is the number of characters a drop gives, so a varied drop stops partway down. How long
+ * its characters stay visible is up to the renderer, as with any other.</p>
+ */
+public class RainSimulation {
+
+    /**
+     * Number of values in the saved state of each drop: its position, speed and remaining length.
+     */
+    public static final int DROP_STATE_SIZE = 3;
+
+    private static final int MULTIPLIER = 10;
+    private static final float MIN_SPEED = 0.4f;
+    private static final float MIN_LENGTH = 0.3f;
+
+    private RainRandom mRandom;
+    private float[] mPositions;
+    private float[] mSpeeds;
+    private short[] mLengths;
+    private float mRows;
+    private float mDropRate;
+    private int mGlyphCount;
+    private boolean mVaried;
+
+    /**
+     * Constructor to initialize the drops, with a few visible ones placed within the field. Every
+     * drop falls a row per tick.
+     *
+     * @param columns    Number of columns.
+     * @param height     Height of the rain.
+     * @param textSize   Size of the rain text, which is also the row height.
+     * @param glyphCount Number of characters to pick from.
+     * @param random     Generator for the drops and characters.
+     */
+    public RainSimulation(int columns, float height, float textSize, int glyphCount, RainRandom random) {
+        this(columns, height, textSize, glyphCount, random, false);
+    }
+
+    /**
+     * Constructor to initialize the drops, with a few visible ones placed within the field. Varied
+     * drops each take a speed and length when they start.
+     *
+     * @param columns    Number of columns.
+     * @param height     Height of the rain.
+     * @param textSize   Size of the rain text, which is also the row height.
+     * @param glyphCount Number of characters to pick from.
+     * @param random     Generator for the drops and characters.
+     * @param varied     True for drops of different speeds and lengths.
+     */
+    public RainSimulation(int columns, float height, float textSize, int glyphCount, RainRandom random,
+                          boolean varied) {
+        mRandom = random;
+        mPositions = new float[Math.max(columns, 0)];
+        mSpeeds = new float[mPositions.length];
+        mLengths = new short[mPositions.length];
+        mRows = height / textSize;
+        mDropRate = 1 - textSize / height;
+        mGlyphCount = glyphCount;
+        mVaried = varied;
+
+        // Start with a few drops
+        for (int i = 0; i < mPositions.length; i++) {
+            mPositions[i] = (int) (mRandom.nextFloat() * mRows * MULTIPLIER);
+            startDrop(i);
+        }
+    }
+
+    /**
+     * Move each drop down, giving the renderer a random character for each row it reaches while its
+     * length lasts. Nothing is allocated here, as it runs for every frame.
+     *
+     * @param renderer Renderer for the characters.
+     */
+    public void tick(GlyphRenderer renderer) {
+        float[] positions = mPositions;
+        float[] speeds = mSpeeds;
+        short[] lengths = mLengths;
+        boolean varied = mVaried;
+        float rows = mRows;
+        float dropRate = mDropRate;
+        int glyphCount = mGlyphCount;
+
+        for (int i = 0; i < positions.length; i++) {
+            float position = positions[i];
+            int row = (int) position;
+
+            // Reached this row during the last tick
+            if (position - row < speeds[i] && lengths[i] > 0) {
+                renderer.drawGlyph(mRandom.nextInt(glyphCount), i, row);
+
+                // Uniform drops never end
+                if (varied) {
+                    lengths[i]--;
+                }
+            }
+
+            // Fall past the screen height
+            if (position > rows && mRandom.nextFloat() > dropRate) {
+                position = 0;
+                startDrop(i);
+            }
+
+            positions[i] = position + speeds[i];
+        }
+    }
+
+    /**
+     * Give a column the speed and length of a new drop.
+     *
+     * @param column Column of the drop.
+     */
+    private void startDrop(int column) {
+        if (!mVaried) {
+            mSpeeds[column] = 1;
+            mLengths[column] = Short.MAX_VALUE;
+            return;
+        }
+
+        float length = mRows * (MIN_LENGTH + mRandom.nextFloat() * (1 - MIN_LENGTH));
+
+        mSpeeds[column] = MIN_SPEED + mRandom.nextFloat() * (1 - MIN_SPEED);
+        mLengths[column] = (short) Math.min(length + 1, Short.MAX_VALUE);
+    }
+
+    /**
+     * Get the number of columns.
+     *
+     * @return Column count.
+     */
+    public int getColumnCount() {
+        return mPositions.length;
+    }
+
+    /**
+     * Get the row of the next character in a column.
+     *
+     * @param column Column of the drop.
+     * @return Row of the drop.
+     */
+    public int getPosition(int column) {
+        return (int) mPositions[column];
+    }
+
+    /**
+     * Set the row of the next character in a column.
+     *
+     * @param column   Column of the drop.
+     * @param position Row of the drop.
+     */
+    public void setPosition(int column, int position) {
+        mPositions[column] = Math.max(position, 0);
+    }
+
+    /**
+     * Copy the position, speed and remaining length of the drop in a column. This is the state to
+     * save for the drop to carry on exactly where it was.
+     *
+     * @param column Column of the drop.
+     * @param state  Array to copy the {@link #DROP_STATE_SIZE} values to.
+     * @param offset Index of the first value in the array.
+     */
+    public void getDrop(int column, float[] state, int offset) {
+        state[offset] = mPositions[column];
+        state[offset + 1] = mSpeeds[column];
+        state[offset + 2] = mLengths[column];
+    }
+
+    /**
+     * Restore the drop in a column from its saved state. Uniform drops only take the position, and
+     * the speed and length of varied drops are kept within range.
+     *
+     * @param column Column of the drop.
+     * @param state  Array holding the {@link #DROP_STATE_SIZE} values.
+     * @param offset Index of the first value in the array.
+     */
+    public void setDrop(int column, float[] state, int offset) {
+        mPositions[column] = Math.max(state[offset], 0);
+
+        if (mVaried) {
+            mSpeeds[column] = Math.min(Math.max(state[offset + 1], MIN_SPEED), 1);
+            mLengths[column] = (short) Math.min(Math.max(state[offset + 2], 0), Short.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Get the speed of the drop in a column.
+     *
+     * @param column Column of the drop.
+     * @return Rows fallen per tick, up to 1.
+     */
+    public float getSpeed(int column) {
+        return mSpeeds[column];
+    }
+}
@@ -0,0 +1,34 @@
+package com.unary.digitalrain.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the printable characters of the rain alphabets.
+ */
+public class RainAlphabetTest {
+    @Test
+    public void latin1_leavesOutControls() {
+        RainAlphabet alphabet = RainAlphabet.LATIN_1;
+
+        for (int i = 0; i < alphabet.size(); i++) {
+            char c = alphabet.charAt(i);
+            assertFalse(c == ' ' || c == 0x7F || (c >= 0x80 && c <= 0xA0) || c == 0xAD);
+        }
+
+        assertEquals(94 + 94, alphabet.size());
+    }
+
+    @Test
+    public void of_dropsRepeatsAndSpaces() {
+        RainAlphabet alphabet = RainAlphabet.of("01 10\n\u0007");
+
+        assertArrayEquals(new char[]{'0', '1'}, alphabet.toCharArray());
+    }
+
+    @Test
+    public void of_fallsBackToAscii() {
+        assertEquals(RainAlphabet.ASCII, RainAlphabet.of(" \t"));
+    }
+}
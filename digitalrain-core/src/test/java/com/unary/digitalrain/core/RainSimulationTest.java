@@ -0,0 +1,147 @@
+package com.unary.digitalrain.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the rain simulation, which runs without any Android classes.
+ */
+public class RainSimulationTest {
+    @Test
+    public void tick_drawsOneGlyphPerColumn() {
+        RainSimulation simulation = new RainSimulation(8, 1000, 10, 224, new RainRandom(1));
+        final int[] counts = new int[8];
+
+        simulation.tick(new GlyphRenderer() {
+            @Override
+            public void drawGlyph(int glyph, int column, int row) {
+                assertTrue(glyph >= 0 && glyph < 224);
+                counts[column]++;
+            }
+        });
+
+        assertArrayEquals(new int[]{1, 1, 1, 1, 1, 1, 1, 1}, counts);
+    }
+
+    @Test
+    public void tick_movesDropsDown() {
+        RainSimulation simulation = new RainSimulation(1, 1000, 10, 224, new RainRandom(1));
+        simulation.setPosition(0, 5);
+
+        simulation.tick(new GlyphRenderer() {
+            @Override
+            public void drawGlyph(int glyph, int column, int row) {
+                assertEquals(5, row);
+            }
+        });
+
+        assertEquals(6, simulation.getPosition(0));
+    }
+
+    @Test
+    public void tick_isRepeatableWithSeed() {
+        RainSimulation first = new RainSimulation(16, 1000, 10, 224, new RainRandom(42));
+        RainSimulation second = new RainSimulation(16, 1000, 10, 224, new RainRandom(42));
+        GlyphRenderer renderer = new GlyphRenderer() {
+            @Override
+            public void drawGlyph(int glyph, int column, int row) {
+            }
+        };
+
+        for (int i = 0; i < 1000; i++) {
+            first.tick(renderer);
+            second.tick(renderer);
+        }
+
+        for (int i = 0; i < 16; i++) {
+            assertEquals(first.getPosition(i), second.getPosition(i));
+        }
+    }
+
+    @Test
+    public void tick_variedDropsFallAtTheirOwnSpeed() {
+        RainSimulation simulation = new RainSimulation(16, 1000, 10, 224, new RainRandom(7), true);
+        final int[] counts = new int[16];
+        final int[] lastRows = new int[16];
+        float[] lengths = new float[16];
+        float[] drop = new float[RainSimulation.DROP_STATE_SIZE];
+        int ticks = 90;
+
+        for (int i = 0; i < 16; i++) {
+            simulation.setPosition(i, 0);
+            simulation.getDrop(i, drop, 0);
+            lengths[i] = drop[2];
+            lastRows[i] = -1;
+        }
+
+        for (int i = 0; i < ticks; i++) {
+            simulation.tick(new GlyphRenderer() {
+                @Override
+                public void drawGlyph(int glyph, int column, int row) {
+                    // One character for each row reached, in order
+                    assertEquals(lastRows[column] + 1, row);
+                    lastRows[column] = row;
+                    counts[column]++;
+                }
+            });
+        }
+
+        boolean differ = false;
+
+        for (int i = 0; i < 16; i++) {
+            float speed = simulation.getSpeed(i);
+            differ |= speed != simulation.getSpeed(0);
+
+            // Nothing reaches the bottom, so each drop is still the first
+            assertTrue(speed >= 0.4f && speed <= 1);
+            assertTrue(Math.abs(simulation.getPosition(i) - speed * ticks) <= 1);
+
+            // Characters stop once the length is used up
+            assertTrue(lastRows[i] < lengths[i]);
+
+            if (simulation.getPosition(i) > lengths[i] + 1) {
+                assertEquals((int) lengths[i], counts[i]);
+            }
+        }
+
+        assertTrue(differ);
+    }
+
+    @Test
+    public void setDrop_restoresSpeedAndLength() {
+        RainSimulation first = new RainSimulation(16, 1000, 10, 224, new RainRandom(7), true);
+        RainSimulation second = new RainSimulation(16, 1000, 10, 224, new RainRandom(8), true);
+        float[] state = new float[16 * RainSimulation.DROP_STATE_SIZE];
+        final int[] firstCounts = new int[16];
+        final int[] secondCounts = new int[16];
+
+        for (int i = 0; i < 16; i++) {
+            first.setPosition(i, 0);
+            first.getDrop(i, state, i * RainSimulation.DROP_STATE_SIZE);
+            second.setDrop(i, state, i * RainSimulation.DROP_STATE_SIZE);
+        }
+
+        for (int i = 0; i < 50; i++) {
+            first.tick(new GlyphRenderer() {
+                @Override
+                public void drawGlyph(int glyph, int column, int row) {
+                    firstCounts[column]++;
+                }
+            });
+            second.tick(new GlyphRenderer() {
+                @Override
+                public void drawGlyph(int glyph, int column, int row) {
+                    secondCounts[column]++;
+                }
+            });
+        }
+
+        for (int i = 0; i < 16; i++) {
+            assertEquals(first.getSpeed(i), second.getSpeed(i), 0);
+            assertEquals(first.getPosition(i), second.getPosition(i));
+        }
+
+        assertArrayEquals(firstCounts, secondCounts);
+    }
+}
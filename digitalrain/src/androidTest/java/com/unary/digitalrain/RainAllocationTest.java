@@ -0,0 +1,44 @@
+package com.unary.digitalrain;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Debug;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test to check the rain frames allocate nothing once they are running.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RainAllocationTest {
+    @SuppressWarnings("deprecation")
+    @Test
+    public void draw_allocatesNothing() {
+        Bitmap bitmap = Bitmap.createBitmap(720, 1280, Bitmap.Config.ARGB_8888);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(42);
+
+        Rain rain = new Rain(new Canvas(bitmap), paint);
+
+        // Warm up any lazy native state
+        for (int i = 0; i < 100; i++) {
+            rain.draw();
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+
+        for (int i = 0; i < 1000; i++) {
+            rain.draw();
+        }
+
+        Debug.stopAllocCounting();
+        assertEquals(0, Debug.getThreadAllocCount());
+    }
+}
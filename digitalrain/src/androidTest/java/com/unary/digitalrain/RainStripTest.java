@@ -0,0 +1,64 @@
+package com.unary.digitalrain;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.unary.digitalrain.core.RainAlphabet;
+import com.unary.digitalrain.core.RainSimulation;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Instrumented test to check the rain drawn in strips is the same as drawn in one piece.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RainStripTest {
+    @Test
+    public void render_stripsMatchOneStrip() {
+        // Fewer cores only ever use one strip
+        assumeTrue(Runtime.getRuntime().availableProcessors() >= 4);
+
+        assertTrue(renderFrame(1).sameAs(renderFrame(4)));
+    }
+
+    private static Bitmap renderFrame(int threads) {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(Color.GREEN);
+        paint.setTextSize(42.5f);
+
+        // One wide character, blurred on the far layer, so the pick does not matter
+        RainRenderer renderer = new RainRenderer(paint);
+        renderer.setRainAdaptive(false);
+        renderer.setRainAlphabet(RainAlphabet.of("W"));
+        renderer.setRainDepth(4);
+        renderer.setRainIntensity(2);
+        renderer.setRainThreads(threads);
+        renderer.setSize(720, 1280);
+        renderer.prewarm();
+
+        float[][] drops = new float[2][Rain.getColumnCount(720, 42.5f) * RainSimulation.DROP_STATE_SIZE];
+
+        for (float[] layer : drops) {
+            for (int i = 0; i < layer.length; i += RainSimulation.DROP_STATE_SIZE) {
+                layer[i] = i % 20;
+            }
+        }
+
+        renderer.setColumnDrops(drops);
+        renderer.render(3);
+
+        Bitmap bitmap = Bitmap.createBitmap(720, 1280, Bitmap.Config.ARGB_8888);
+        renderer.draw(new Canvas(bitmap), 0, 0);
+        renderer.release();
+
+        return bitmap;
+    }
+}
@@ -19,16 +19,19 @@ import android.animation.Animator;
 import android.animation.AnimatorInflater;
 import android.animation.TimeAnimator;
 import android.annotation.SuppressLint;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.ColorStateList;
 import android.content.res.TypedArray;
-import android.graphics.Bitmap;
-import android.graphics.BlurMaskFilter;
 import android.graphics.Canvas;
 import android.graphics.Paint;
-import android.graphics.PorterDuff;
 import android.graphics.Rect;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.util.AttributeSet;
 import android.util.TypedValue;
 import android.view.View;
@@ -41,6 +44,8 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
+import com.unary.digitalrain.core.RainAlphabet;
+
 /**
  * A styleable widget that recreates the classic Matrix digital rain effect. It features a number of
  * customizations for the animation and text.
@@ -48,11 +53,18 @@ import androidx.annotation.RequiresApi;
  * <p><strong>XML attributes</strong></p>
  * <p>The following optional attributes can be used to change the look and feel of the view:</p>
  * <pre>
+ *   app:rainAdaptive="boolean"          // Lower the quality when frames are slow
  *   app:rainAlpha="float"               // How quickly the character trails fade
+ *   app:rainAlphabet="enum"             // Characters of the rain. Default is latin1
  *   app:rainAnimator="reference"        // Animator to use for the text rain
  *   app:rainDepth="float"               // Layer depth blur. This is drawing intensive
+ *   app:rainDepthMode="enum"            // Blur the layer text or downsample the layers
+ *   app:rainEngine="enum"               // Accumulate on the canvas, keep a grid of cells or a frame history
  *   app:rainIntensity="integer"         // Default number of layers is 3
+ *   app:rainRenderScale="float"         // Scale of the rendered rain. Default is 1
  *   app:rainSpeed="integer"             // Time interval in milliseconds for speed
+ *   app:rainThreads="integer"           // Threads drawing strips of the rain. Default is 1
+ *   app:rainVaried="boolean"            // Drops of different speeds and lengths
  *
  *   android:autoStart="boolean"         // If animation should start automatically
  *   android:enabled="boolean"           // Changes the view state
@@ -63,30 +75,82 @@ import androidx.annotation.RequiresApi;
  */
 public class DigitalRain extends View implements TimeAnimator.TimeListener, Runnable {
 
+    /**
+     * Interface definition for a callback with the timings of each rain frame.
+     */
+    public interface OnRainFrameListener {
+
+        /**
+         * Called on the UI thread when a new frame is drawn. Times are in nanoseconds.
+         *
+         * @param renderTime     Time taken to render the frame, including the fade.
+         * @param fadeTime       Time taken to fade the last frame.
+         * @param publishLatency Time from the frame being published to being drawn.
+         * @param skippedTicks   Ticks dropped since the last frame, as they were too far behind.
+         */
+        void onRainFrame(long renderTime, long fadeTime, long publishLatency, int skippedTicks);
+    }
+
+    /**
+     * Depth mode that blurs the text of each layer.
+     */
+    public static final int DEPTH_MODE_BLUR = 0;
+
+    /**
+     * Depth mode that draws each layer at a lower resolution and scales it up.
+     */
+    public static final int DEPTH_MODE_DOWNSAMPLE = 1;
+
+    /**
+     * Engine that accumulates the rain on the canvas and fades all of it for each frame.
+     */
+    public static final int ENGINE_CANVAS = 0;
+
+    /**
+     * Engine that keeps the rain as a grid of cells and draws only the visible ones.
+     */
+    public static final int ENGINE_GRID = 1;
+
+    /**
+     * Engine that records the new characters of each frame and fades the recent frames on the
+     * display. This needs Android 10 and hardware acceleration, and falls back to the canvas
+     * engine otherwise.
+     */
+    public static final int ENGINE_HISTORY = 2;
+
     private static final float VIEW_WIDTH = 256; // dp
     private static final float VIEW_HEIGHT = 256; // dp
-    private static final float RAIN_ALPHA = 24f / 255;
-    private static final float RAIN_DEPTH = 0;
-    private static final int RAIN_INTENSITY = 3;
     private static final int RAIN_SPEED = 100; // ms
     private static final boolean AUTO_START = true;
     private static final int TEXT_COLOR = R.attr.colorControlNormal;
     private static final int TEXT_COLOR_DISABLED = R.attr.colorControlHighlight;
     private static final float TEXT_SIZE = 14; // sp
 
-    private float mRainAlpha;
     private Animator mRainAnimator;
-    private long mDeltaTime;
-    private boolean mRunning;
-    private float mRainDepth;
-    private Rain[] mRainIntensity;
+    private RainTimestep mRainTimestep;
+    private volatile boolean mRunning;
+    private int mPendingSteps;
+    private int mSkippedFrames;
+    private HandlerThread mRenderThread;
+    private Handler mRenderHandler;
+    private Runnable mInvalidateRunnable;
+    private RainRenderer mRainRenderer;
     private int mRainSpeed;
     private boolean mAutoStart;
     private ColorStateList mTextColor;
-    private Paint mTextPaint;
-    private Canvas mRainCanvas;
-    private Bitmap mCanvasBitmap;
     private Rect mDrawingRect;
+    private OnRainFrameListener mOnRainFrameListener;
+    private long mReportedFrameCount;
+    private int mReportedSkippedFrames;
+    private SharedRainEngine mSharedEngine;
+    private boolean mAttached;
+    private RainThrottle mRainThrottle;
+    private RainConditions mRainConditions;
+    private int mTickInterval;
+    private ComponentCallbacks2 mTrimCallbacks;
+    private Runnable mPrewarmRunnable;
+    private volatile boolean mPrewarmPending;
+    private Runnable mReleaseRunnable;
 
     /**
      * Simple constructor to use when creating the view from code.
@@ -148,16 +212,19 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
         TypedArray typedArray = context.getTheme()
                 .obtainStyledAttributes(attrs, R.styleable.DigitalRain, defStyleAttr, defStyleRes);
 
+        // Initialize the drawing objects
+        Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        textPaint.setStyle(Paint.Style.FILL);
+
+        mRainRenderer = new RainRenderer(textPaint);
+
         int animatorRes;
-        int intensity;
         boolean enabled;
         float textSize;
 
         try {
-            mRainAlpha = typedArray.getFloat(R.styleable.DigitalRain_rainAlpha, RAIN_ALPHA);
+            mRainRenderer.setAttributes(typedArray);
             animatorRes = typedArray.getResourceId(R.styleable.DigitalRain_rainAnimator, 0);
-            mRainDepth = typedArray.getFloat(R.styleable.DigitalRain_rainDepth, RAIN_DEPTH);
-            intensity = typedArray.getInt(R.styleable.DigitalRain_rainIntensity, RAIN_INTENSITY);
             mRainSpeed = typedArray.getInt(R.styleable.DigitalRain_rainSpeed, RAIN_SPEED);
             mAutoStart = typedArray.getBoolean(R.styleable.DigitalRain_android_autoStart, AUTO_START);
             enabled = typedArray.getBoolean(R.styleable.DigitalRain_android_enabled, isEnabled());
@@ -176,23 +243,71 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
 
         // Provide some default colors
         if (mTextColor == null) {
-            int[][] states = new int[][]{new int[]{-android.R.attr.state_enabled}, new int[]{}};
-            int[] colors = new int[]{getAttrColor(context, TEXT_COLOR_DISABLED), getAttrColor(context, TEXT_COLOR)};
-
-            mTextColor = new ColorStateList(states, colors);
+            mTextColor = getDefaultTextColor(context);
         }
 
         // Sanitize the input values
-        intensity = Math.max(intensity, 0);
         mRainSpeed = Math.max(mRainSpeed, 0);
+        mRainRenderer.setFrameBudget(mRainSpeed);
 
-        // Initialize the drawing objects
-        mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mTextPaint.setStyle(Paint.Style.FILL);
-        mTextPaint.setTextSize(textSize);
-
+        textPaint.setTextSize(textSize);
         mDrawingRect = new Rect();
-        mRainIntensity = new Rain[intensity];
+        mRainTimestep = new RainTimestep();
+        mRainThrottle = new RainThrottle();
+        mTickInterval = mRainSpeed;
+
+        // Pause or slow down the rain as needed
+        mRainConditions = new RainConditions(this, new Runnable() {
+            @Override
+            public void run() {
+                updateRunning();
+            }
+        });
+
+        // Give the buffers back while the view is hidden
+        mTrimCallbacks = new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                if (level >= TRIM_MEMORY_UI_HIDDEN && isRainHidden()) {
+                    trimMemory();
+                }
+            }
+
+            @Override
+            public void onConfigurationChanged(@NonNull Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                if (isRainHidden()) {
+                    trimMemory();
+                }
+            }
+        };
+
+        mReleaseRunnable = new Runnable() {
+            @Override
+            public void run() {
+                mRainRenderer.releaseBuffers();
+            }
+        };
+
+        // Buffers and layers are created off the UI thread
+        mPrewarmRunnable = new Runnable() {
+            @Override
+            public void run() {
+                mPrewarmPending = false;
+                mRainRenderer.prewarm();
+            }
+        };
+
+        // Reused for every frame
+        mInvalidateRunnable = new Runnable() {
+            @Override
+            public void run() {
+                invalidate();
+            }
+        };
 
         // Set a stateful text color
         setEnabled(enabled);
@@ -220,15 +335,20 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
     protected void onWindowVisibilityChanged(int visibility) {
         super.onWindowVisibilityChanged(visibility);
 
-        if (mAutoStart && mRainAnimator != null) {
-            switch (visibility) {
-                case VISIBLE:
-                    mRainAnimator.start();
-                    break;
-                default:
-                    mRainAnimator.end();
-                    break;
-            }
+        // Settings may have changed while away
+        if (visibility == VISIBLE && mAttached) {
+            mRainConditions.refresh();
+        }
+
+        updateRunning();
+    }
+
+    @Override
+    protected void onVisibilityChanged(@NonNull View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+
+        if (mSharedEngine != null && mAttached) {
+            mSharedEngine.wake();
         }
     }
 
@@ -257,23 +377,23 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
 
         if (mDrawingRect.width() < 1 || mDrawingRect.height() < 1) return;
 
-        // Allocate here for padding
-        mCanvasBitmap = Bitmap.createBitmap(mDrawingRect.width(), mDrawingRect.height(), Bitmap.Config.ARGB_8888);
-        mRainCanvas = new Canvas(mCanvasBitmap);
-
-        for (int i = 0; i < mRainIntensity.length; i++) {
-            Paint paint = new Paint(mTextPaint);
-
-            if (mRainDepth > 0) {
-                float radius = i * mRainDepth + 0.001f;
-                paint.setMaskFilter(new BlurMaskFilter(radius, BlurMaskFilter.Blur.NORMAL));
-            }
-
-            mRainIntensity[i] = new Rain(mRainCanvas, paint);
-        }
+        // Nothing is drawn until the first frame is ready
+        mRainRenderer.setSize(mDrawingRect.width(), mDrawingRect.height());
+        prewarm();
 
         // Start the rain immediately
-        mDeltaTime = mRainSpeed;
+        mRainTimestep.reset(mRainSpeed);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        mAttached = true;
+        mRainRenderer.setHardwareAccelerated(isHardwareAccelerated());
+        mRainConditions.start();
+        getContext().getApplicationContext().registerComponentCallbacks(mTrimCallbacks);
+        startRendering();
     }
 
     @Override
@@ -284,47 +404,51 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
         if (mRainAnimator != null) {
             mRainAnimator.cancel();
         }
+
+        stopRendering();
+        mRainConditions.stop();
+        getContext().getApplicationContext().unregisterComponentCallbacks(mTrimCallbacks);
+        mAttached = false;
+
+        // Waits for any frame in progress
+        mRainRenderer.release();
+        mRunning = false;
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
-        if (mCanvasBitmap != null) {
-            canvas.drawBitmap(mCanvasBitmap, mDrawingRect.left, mDrawingRect.top, null);
+        mRainRenderer.draw(canvas, mDrawingRect.left, mDrawingRect.top);
+
+        // Only report frames not seen before
+        if (mOnRainFrameListener != null && mRainRenderer.getFrameCount() != mReportedFrameCount) {
+            int skippedTicks = mSkippedFrames - mReportedSkippedFrames;
+
+            mReportedFrameCount = mRainRenderer.getFrameCount();
+            mReportedSkippedFrames = mSkippedFrames;
+
+            mOnRainFrameListener.onRainFrame(mRainRenderer.getRenderTime(), mRainRenderer.getFadeTime(),
+                    System.nanoTime() - mRainRenderer.getPublishTime(), skippedTicks);
         }
     }
 
     @Override
     public void onTimeUpdate(TimeAnimator animation, long totalTime, long deltaTime) {
-        mDeltaTime += deltaTime;
-
-        // Don't pile up the updates
-        if (mDeltaTime > mRainSpeed && !mRunning && mRainCanvas != null) {
-            mDeltaTime = 0;
-            new Thread(this).start();
+        if (mRenderHandler != null && tick(deltaTime)) {
+            mRenderHandler.post(this);
         }
     }
 
     @Override
     public void run() {
-        mRunning = true;
-
-        // Fade out old characters
-        mRainCanvas.drawColor((int) (mRainAlpha * 255) << 24, PorterDuff.Mode.DST_OUT);
-
-        for (int i = 0; i < mRainIntensity.length; i++) {
-            mRainIntensity[i].draw();
-        }
+        mRainRenderer.render(mPendingSteps);
 
         // Post updates to the UI
-        if (getHandler() != null) {
-            getHandler().post(new Runnable() {
-                @Override
-                public void run() {
-                    invalidate();
-                }
-            });
+        Handler handler = getHandler();
+
+        if (handler != null) {
+            handler.post(mInvalidateRunnable);
         }
 
         mRunning = false;
@@ -336,6 +460,202 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
         setTextColor(mTextColor);
     }
 
+    /**
+     * Add the time since the last tick, and mark a frame as pending with every step of the rain
+     * speed that has passed. Time carries over while the last frame is still pending, and the
+     * steps are caught up by the next frame, up to a limit.
+     *
+     * @param deltaTime Time since the last tick in milliseconds.
+     * @return True if a new frame is pending.
+     */
+    boolean tick(long deltaTime) {
+        if (isRainPaused()) return false;
+
+        // Created again after being trimmed
+        if (!mRainRenderer.isReady()) {
+            prewarm();
+            return false;
+        }
+
+        updateThrottle();
+
+        // Don't pile up the updates
+        int dropped = mRainTimestep.add(deltaTime, mTickInterval);
+
+        if (dropped > 0) {
+            mSkippedFrames += dropped;
+
+            RainTrace.setCounter(RainTrace.SKIPPED, mSkippedFrames);
+        }
+
+        if (mRunning) return false;
+
+        mPendingSteps = mRainTimestep.takeSteps(mTickInterval);
+
+        if (mPendingSteps == 0) return false;
+
+        mRunning = true;
+        return true;
+    }
+
+    /**
+     * Check if a frame is waiting to be rendered.
+     *
+     * @return True if pending.
+     */
+    boolean isFramePending() {
+        return mRunning;
+    }
+
+    /**
+     * Check if the rain should be running for a shared engine. This follows the auto start status
+     * and the visibility of the view.
+     *
+     * @return True if the rain can be seen.
+     */
+    boolean isRainVisible() {
+        return mAutoStart && getWindowVisibility() == VISIBLE && isShown() && !isRainPaused();
+    }
+
+    /**
+     * Check if the rain can't be seen at all, so its buffers can be given back without a blank
+     * frame.
+     *
+     * @return True if hidden.
+     */
+    private boolean isRainHidden() {
+        return getWindowVisibility() != VISIBLE || !isShown();
+    }
+
+    /**
+     * Check if the throttle has paused the rain in the current conditions.
+     *
+     * @return True if paused.
+     */
+    private boolean isRainPaused() {
+        return mRainThrottle != null && mRainThrottle.isPaused(mRainConditions.isClipped(),
+                mRainConditions.getAnimatorScale());
+    }
+
+    /**
+     * Apply the throttle for the current conditions. The tick interval is scaled from the rain
+     * speed, and layers are dropped if needed. Nothing changes unless the conditions do.
+     */
+    private void updateThrottle() {
+        int tickInterval = mRainSpeed;
+        int intensityLimit = Integer.MAX_VALUE;
+
+        if (mRainThrottle != null) {
+            int thermalStatus = mRainConditions.getThermalStatus();
+
+            tickInterval = (int) (mRainSpeed * mRainThrottle.getSpeedScale(mRainConditions.isPowerSaveMode(),
+                    thermalStatus, mRainConditions.getAnimatorScale()));
+            intensityLimit = mRainThrottle.getIntensityLimit(thermalStatus);
+        }
+
+        if (tickInterval != mTickInterval) {
+            mTickInterval = tickInterval;
+            mRainRenderer.setFrameBudget(tickInterval);
+        }
+
+        mRainRenderer.setIntensityLimit(intensityLimit);
+    }
+
+    /**
+     * Start or stop the ticks for the window visibility and current conditions. The shared engine
+     * is woken to check the view itself.
+     */
+    private void updateRunning() {
+        // Engine ticks the visible views itself
+        if (mSharedEngine != null) {
+            if (mAttached) {
+                mSharedEngine.wake();
+            }
+
+            return;
+        }
+
+        if (mAutoStart && mRainAnimator != null) {
+            switch (getWindowVisibility()) {
+                case VISIBLE:
+                    // No ticks are needed while throttled
+                    if (isRainPaused()) {
+                        mRainAnimator.end();
+                    } else if (!mRainAnimator.isStarted()) {
+                        mRainAnimator.start();
+                    }
+                    break;
+                default:
+                    mRainAnimator.end();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Start rendering frames, either with a thread of its own or with the shared engine.
+     */
+    private void startRendering() {
+        if (mSharedEngine != null) {
+            mSharedEngine.attach(this);
+            return;
+        }
+
+        // Long-lived worker for the frames
+        mRenderThread = new HandlerThread("DigitalRain");
+        mRenderThread.start();
+        mRenderHandler = new Handler(mRenderThread.getLooper());
+    }
+
+    /**
+     * Stop rendering frames with the thread or shared engine.
+     */
+    private void stopRendering() {
+        mPrewarmPending = false;
+
+        if (mSharedEngine != null) {
+            mSharedEngine.detach(this);
+        }
+
+        if (mRenderThread != null) {
+            mRenderHandler.removeCallbacks(this);
+            mRenderHandler.removeCallbacks(mPrewarmRunnable);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                mRenderThread.quitSafely();
+            } else {
+                mRenderThread.quit();
+            }
+
+            mRenderThread = null;
+            mRenderHandler = null;
+        }
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState savedState = new SavedState(super.onSaveInstanceState());
+        savedState.mColumnDrops = mRainRenderer.getColumnDrops();
+
+        return savedState;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+
+        SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+
+        // Carry on where the rain was
+        if (savedState.mColumnDrops != null) {
+            mRainRenderer.setColumnDrops(savedState.mColumnDrops);
+        }
+    }
+
     /**
      * Check if the layout direction for the given view or configuration is left-to-right.
      *
@@ -363,7 +683,7 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
      * @param dp      Density pixels to convert.
      * @return The pixel resolution.
      */
-    private static int dpToPixels(Context context, @Dimension float dp) {
+    static int dpToPixels(Context context, @Dimension float dp) {
         return (int) (dp * context.getResources().getDisplayMetrics().density + 0.5f);
     }
 
@@ -379,6 +699,19 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
         return px / context.getResources().getDisplayMetrics().density;
     }
 
+    /**
+     * Utility method to create the default stateful text color from the theme.
+     *
+     * @param context Context given for the theme.
+     * @return Default and disabled colors.
+     */
+    static ColorStateList getDefaultTextColor(Context context) {
+        int[][] states = new int[][]{new int[]{-android.R.attr.state_enabled}, new int[]{}};
+        int[] colors = new int[]{getAttrColor(context, TEXT_COLOR_DISABLED), getAttrColor(context, TEXT_COLOR)};
+
+        return new ColorStateList(states, colors);
+    }
+
     /**
      * Utility method to find a color integer as defined in a theme attribute.
      *
@@ -421,13 +754,156 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
         }
     }
 
+    /**
+     * Create the buffers and layers of the rain on the render thread, so the first frame is ready
+     * sooner. This is done as soon as a layout gives the size, and does nothing before then or
+     * while the view is detached.
+     */
+    public void prewarm() {
+        if (mPrewarmPending) return;
+
+        if (mSharedEngine != null && mAttached) {
+            mPrewarmPending = mSharedEngine.post(mPrewarmRunnable);
+        } else if (mRenderHandler != null) {
+            mPrewarmPending = mRenderHandler.post(mPrewarmRunnable);
+        }
+    }
+
+    /**
+     * Drop the buffers, layers and characters of the rain, and any characters cached by the shared
+     * engine. They are created again by the next visible frame, with the drops where they were.
+     */
+    public void trimMemory() {
+        boolean posted = false;
+
+        // The render thread waits for any frame in progress instead of the UI thread
+        if (mSharedEngine != null && mAttached) {
+            posted = mSharedEngine.post(mReleaseRunnable);
+        } else if (mRenderHandler != null) {
+            posted = mRenderHandler.post(mReleaseRunnable);
+        }
+
+        if (!posted) {
+            mRainRenderer.releaseBuffers();
+        }
+
+        if (mSharedEngine != null) {
+            mSharedEngine.trimMemory();
+        }
+    }
+
+    /**
+     * Get the memory held by the buffers and characters of the rain. This is what
+     * {@link #trimMemory()} gives back.
+     *
+     * @return Size in bytes.
+     */
+    public long getAllocatedBytes() {
+        return mRainRenderer.getAllocatedBytes();
+    }
+
+    /**
+     * Get the renderer for the rain. It holds the buffers and layers of the view.
+     *
+     * @return Renderer for the rain.
+     */
+    @NonNull
+    public RainRenderer getRainRenderer() {
+        return mRainRenderer;
+    }
+
+    /**
+     * Get the rules for slowing down or pausing the rain. Changes to them take effect with the
+     * next tick, or with the next change in conditions for a paused rain.
+     *
+     * @return The throttle, or null for none.
+     */
+    @Nullable
+    public RainThrottle getRainThrottle() {
+        return mRainThrottle;
+    }
+
+    /**
+     * Set the rules for slowing down or pausing the rain. By default the rain pauses while it is
+     * clipped from the screen or animations are off, and slows down for battery saver, the
+     * thermal status and the animator duration scale.
+     *
+     * @param rainThrottle The throttle, or null to always run at the rain speed.
+     */
+    public void setRainThrottle(@Nullable RainThrottle rainThrottle) {
+        mRainThrottle = rainThrottle;
+
+        if (mAttached) {
+            updateRunning();
+        }
+    }
+
+    /**
+     * Get the shared engine driving the view, if any.
+     *
+     * @return The shared engine, or null for none.
+     */
+    @Nullable
+    public SharedRainEngine getSharedEngine() {
+        return mSharedEngine;
+    }
+
+    /**
+     * Set a shared engine to drive the view, along with any others using it. The animator is not
+     * used while it is set, and the rain runs whenever the view is visible if auto start is set.
+     *
+     * @param sharedEngine The shared engine, or null for the view to run on its own.
+     */
+    public void setSharedEngine(@Nullable SharedRainEngine sharedEngine) {
+        if (sharedEngine == mSharedEngine) return;
+
+        if (mAttached) {
+            stopRendering();
+        }
+
+        mSharedEngine = sharedEngine;
+
+        if (sharedEngine != null && mRainAnimator != null) {
+            mRainAnimator.end();
+        }
+
+        if (mAttached) {
+            // Waits for any frame in progress
+            mRainRenderer.release();
+            mRunning = false;
+
+            startRendering();
+            updateRunning();
+        }
+    }
+
+    /**
+     * Get the adaptive quality status. This determines if the depth, layers and column density are
+     * lowered while frames take longer to render than the rain speed allows.
+     *
+     * @return Adaptive quality status.
+     */
+    public boolean isRainAdaptive() {
+        return mRainRenderer.isRainAdaptive();
+    }
+
+    /**
+     * Set the adaptive quality status. This determines if the depth, layers and column density are
+     * lowered while frames take longer to render than the rain speed allows.
+     *
+     * @param rainAdaptive Adaptive quality status.
+     */
+    public void setRainAdaptive(boolean rainAdaptive) {
+        mRainRenderer.setRainAdaptive(rainAdaptive);
+    }
+
     /**
      * Get the opacity used for the trailing text effect. The range is from 0 to 1 for none.
      *
      * @return Falling rain alpha.
      */
     public float getRainAlpha() {
-        return mRainAlpha;
+        return mRainRenderer.getRainAlpha();
     }
 
     /**
@@ -436,7 +912,27 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
      * @param rainAlpha Falling rain alpha.
      */
     public void setRainAlpha(float rainAlpha) {
-        mRainAlpha = rainAlpha;
+        mRainRenderer.setRainAlpha(rainAlpha);
+    }
+
+    /**
+     * Get the characters the rain is made of.
+     *
+     * @return The alphabet.
+     */
+    @NonNull
+    public RainAlphabet getRainAlphabet() {
+        return mRainRenderer.getRainAlphabet();
+    }
+
+    /**
+     * Set the characters the rain is made of, such as {@link RainAlphabet#KATAKANA} or one made
+     * with {@link RainAlphabet#of(String)}.
+     *
+     * @param rainAlphabet The alphabet.
+     */
+    public void setRainAlphabet(@NonNull RainAlphabet rainAlphabet) {
+        mRainRenderer.setRainAlphabet(rainAlphabet);
     }
 
     /**
@@ -480,22 +976,83 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
     }
 
     /**
-     * Get the depth blur used for layers. This is drawing intensive and best not used.
+     * Get the depth blur used for layers. The blur is rendered once into the layer characters.
      *
      * @return The layer depth blur.
      */
     public float getRainDepth() {
-        return mRainDepth;
+        return mRainRenderer.getRainDepth();
     }
 
     /**
-     * Set the depth blur used for layers. This is drawing intensive and best not used.
+     * Set the depth blur used for layers. The blur is rendered once into the layer characters.
      *
      * @param rainDepth The layer depth blur.
      */
     public void setRainDepth(float rainDepth) {
-        mRainDepth = rainDepth;
-        requestLayout();
+        mRainRenderer.setRainDepth(rainDepth);
+    }
+
+    /**
+     * Get the depth mode used for layers. Downsampling draws the far layers at a lower resolution
+     * and scales them up, which is a lot cheaper than blurring the text.
+     *
+     * @return The layer depth mode.
+     */
+    public int getRainDepthMode() {
+        return mRainRenderer.getRainDepthMode();
+    }
+
+    /**
+     * Set the depth mode used for layers. Downsampling draws the far layers at a lower resolution
+     * and scales them up, which is a lot cheaper than blurring the text.
+     *
+     * @param rainDepthMode The layer depth mode. Either {@link #DEPTH_MODE_BLUR} or
+     *                      {@link #DEPTH_MODE_DOWNSAMPLE}.
+     */
+    public void setRainDepthMode(int rainDepthMode) {
+        mRainRenderer.setRainDepthMode(rainDepthMode);
+    }
+
+    /**
+     * Get the engine used for the rain. The grid engine only draws the visible cells, instead of
+     * fading the whole canvas for each frame.
+     *
+     * @return The rain engine.
+     */
+    public int getRainEngine() {
+        return mRainRenderer.getRainEngine();
+    }
+
+    /**
+     * Set the engine used for the rain. The grid engine only draws the visible cells, instead of
+     * fading the whole canvas for each frame.
+     *
+     * @param rainEngine The rain engine. Either {@link #ENGINE_CANVAS}, {@link #ENGINE_GRID} or
+     *                   {@link #ENGINE_HISTORY}.
+     */
+    public void setRainEngine(int rainEngine) {
+        mRainRenderer.setRainEngine(rainEngine);
+    }
+
+    /**
+     * Get the varied drop status. Varied drops each fall at their own speed and stop giving
+     * characters after a random length, instead of all falling a row per tick to the bottom.
+     *
+     * @return True if drops fall at different speeds.
+     */
+    public boolean isRainVaried() {
+        return mRainRenderer.isRainVaried();
+    }
+
+    /**
+     * Set the varied drop status. Varied drops each fall at their own speed and stop giving
+     * characters after a random length, instead of all falling a row per tick to the bottom.
+     *
+     * @param rainVaried Varied drop status.
+     */
+    public void setRainVaried(boolean rainVaried) {
+        mRainRenderer.setRainVaried(rainVaried);
     }
 
     /**
@@ -504,7 +1061,7 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
      * @return Number of rain layers.
      */
     public int getRainIntensity() {
-        return mRainIntensity.length;
+        return mRainRenderer.getRainIntensity();
     }
 
     /**
@@ -513,8 +1070,27 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
      * @param rainIntensity Number of rain layers.
      */
     public void setRainIntensity(int rainIntensity) {
-        mRainIntensity = new Rain[Math.max(rainIntensity, 0)];
-        requestLayout();
+        mRainRenderer.setRainIntensity(rainIntensity);
+    }
+
+    /**
+     * Get the scale of the rendered rain relative to the view. The text is scaled with it, so the
+     * columns stay the same, and the result is scaled up with filtering when drawn.
+     *
+     * @return Render scale of the rain.
+     */
+    public float getRainRenderScale() {
+        return mRainRenderer.getRainRenderScale();
+    }
+
+    /**
+     * Set the scale of the rendered rain relative to the view. The text is scaled with it, so the
+     * columns stay the same. Sanity values are between 0.1 and 1.
+     *
+     * @param rainRenderScale Render scale of the rain.
+     */
+    public void setRainRenderScale(float rainRenderScale) {
+        mRainRenderer.setRainRenderScale(rainRenderScale);
     }
 
     /**
@@ -533,6 +1109,69 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
      */
     public void setRainSpeed(int rainSpeed) {
         mRainSpeed = Math.max(rainSpeed, 0);
+        mTickInterval = mRainSpeed;
+        mRainRenderer.setFrameBudget(mRainSpeed);
+    }
+
+    /**
+     * Get the number of threads used to draw the rain. The columns are split into a vertical strip
+     * for each one. Devices with fewer than 4 cores always use a single thread.
+     *
+     * @return Number of rain threads.
+     */
+    public int getRainThreads() {
+        return mRainRenderer.getRainThreads();
+    }
+
+    /**
+     * Set the number of threads used to draw the rain. The columns are split into a vertical strip
+     * for each one. Devices with fewer than 4 cores always use a single thread.
+     *
+     * @param rainThreads Number of rain threads.
+     */
+    public void setRainThreads(int rainThreads) {
+        mRainRenderer.setRainThreads(rainThreads);
+    }
+
+    /**
+     * Get the number of rain steps dropped because the frames fell too far behind to catch up.
+     * This is a running total since the view was created.
+     *
+     * @return Skipped frame count.
+     */
+    public int getSkippedFrames() {
+        return mSkippedFrames;
+    }
+
+    /**
+     * Get the current quality level. Level 0 is full quality, and each level above it turns off
+     * the depth, drops a layer or makes the columns wider.
+     *
+     * @return Quality level.
+     */
+    public int getQualityLevel() {
+        return mRainRenderer.getQualityLevel();
+    }
+
+    /**
+     * Set a listener for changes to the quality level. It is called on the render thread.
+     *
+     * @param listener Listener to notify, or null for none.
+     */
+    public void setOnQualityChangedListener(@Nullable RainRenderer.OnQualityChangedListener listener) {
+        mRainRenderer.setOnQualityChangedListener(listener);
+    }
+
+    /**
+     * Set a listener for the timings of each frame. The frames are only timed while there is one.
+     *
+     * @param listener Listener to notify, or null for none.
+     */
+    public void setOnRainFrameListener(@Nullable OnRainFrameListener listener) {
+        mOnRainFrameListener = listener;
+        mReportedFrameCount = mRainRenderer.getFrameCount();
+        mReportedSkippedFrames = mSkippedFrames;
+        mRainRenderer.setFrameStatsEnabled(listener != null);
     }
 
     /**
@@ -572,9 +1211,8 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
         mTextColor = textColor;
 
         int statefulColor = textColor.getColorForState(getDrawableState(), textColor.getDefaultColor());
-        mTextPaint.setColor(statefulColor);
-
-        requestLayout();
+        mRainRenderer.setTextColor(statefulColor);
+        invalidate();
     }
 
     /**
@@ -592,7 +1230,7 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
      * @return Size of the rain text.
      */
     public float getTextSize() {
-        return mTextPaint.getTextSize();
+        return mRainRenderer.getTextPaint().getTextSize();
     }
 
     /**
@@ -601,8 +1239,8 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
      * @param textSize Size of the rain text.
      */
     public void setTextSize(float textSize) {
-        mTextPaint.setTextSize(textSize);
-        requestLayout();
+        mRainRenderer.getTextPaint().setTextSize(textSize);
+        mRainRenderer.requestLayout();
     }
 
     /**
@@ -612,7 +1250,7 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
      */
     @NonNull
     public Paint getTextPaint() {
-        return mTextPaint;
+        return mRainRenderer.getTextPaint();
     }
 
     /**
@@ -621,7 +1259,71 @@ public class DigitalRain extends View implements TimeAnimator.TimeListener, Runn
      * @param textPaint Paint for the text rain.
      */
     public void setTextPaint(@NonNull Paint textPaint) {
-        mTextPaint = textPaint;
-        requestLayout();
+        mRainRenderer.setTextPaint(textPaint);
+    }
+
+    /**
+     * State of the view kept through configuration changes. Only the drops are needed for the rain
+     * to carry on, as the trails fill in again within a few frames.
+     */
+    static class SavedState extends BaseSavedState {
+
+        private float[][] mColumnDrops;
+
+        /**
+         * Constructor called by {@link #onSaveInstanceState()}.
+         *
+         * @param superState State of the superclass.
+         */
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        /**
+         * Constructor called by the {@link #CREATOR}.
+         *
+         * @param source Parcel to read from.
+         */
+        private SavedState(Parcel source) {
+            super(source);
+
+            int layers = source.readInt();
+
+            if (layers >= 0) {
+                mColumnDrops = new float[layers][];
+
+                for (int i = 0; i < layers; i++) {
+                    mColumnDrops[i] = source.createFloatArray();
+                }
+            }
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+
+            if (mColumnDrops == null) {
+                out.writeInt(-1);
+                return;
+            }
+
+            out.writeInt(mColumnDrops.length);
+
+            for (float[] drops : mColumnDrops) {
+                out.writeFloatArray(drops);
+            }
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel source) {
+                return new SavedState(source);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.graphics.PixelFormat;
+import android.os.Build;
+import android.util.AttributeSet;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+/**
+ * A variant of {@link DigitalRain} that draws to its own surface. Frames are rendered and posted
+ * from a background thread, so the rain keeps falling while the UI thread is busy. It takes the
+ * same XML attributes, except for the animator.
+ *
+ * <p>See {@link R.styleable#DigitalRain DigitalRain Attributes}</p>
+ */
+public class DigitalRainSurfaceView extends SurfaceView implements SurfaceHolder.Callback {
+
+    private RainSurfaceDelegate mDelegate;
+
+    /**
+     * Simple constructor to use when creating the view from code.
+     *
+     * @param context Context given for the view. This determines the resources and theme.
+     */
+    public DigitalRainSurfaceView(Context context) {
+        super(context);
+        init(context, null, 0, 0);
+    }
+
+    /**
+     * Constructor that is called when inflating the view from XML.
+     *
+     * @param context Context given for the view. This determines the resources and theme.
+     * @param attrs   The attributes for the inflated XML tag.
+     */
+    public DigitalRainSurfaceView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        init(context, attrs, 0, 0);
+    }
+
+    /**
+     * Constructor called when inflating from XML and applying a style.
+     *
+     * @param context      Context given for the view. This determines the resources and theme.
+     * @param attrs        The attributes for the inflated XML tag.
+     * @param defStyleAttr Default style attributes to apply to this view.
+     */
+    public DigitalRainSurfaceView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init(context, attrs, defStyleAttr, 0);
+    }
+
+    /**
+     * Constructor that is used when given a default shared style.
+     *
+     * @param context      Context given for the view. This determines the resources and theme.
+     * @param attrs        The attributes for the inflated XML tag.
+     * @param defStyleAttr Default style attributes to apply to this view.
+     * @param defStyleRes  Default style resource to apply to this view.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    public DigitalRainSurfaceView(Context context, @Nullable AttributeSet attrs, int defStyleAttr, int defStyleRes) {
+        super(context, attrs, defStyleAttr, defStyleRes);
+        init(context, attrs, defStyleAttr, defStyleRes);
+    }
+
+    /**
+     * Shared method to initialize the member variables from the XML and create the drawing objects.
+     * Input values are checked for sanity.
+     *
+     * @param context      Context given for the view. This determines the resources and theme.
+     * @param attrs        The attributes for the inflated XML tag.
+     * @param defStyleAttr Default style attributes to apply to this view.
+     * @param defStyleRes  Default style resource to apply to this view.
+     */
+    private void init(Context context, @Nullable AttributeSet attrs, int defStyleAttr, int defStyleRes) {
+        mDelegate = new RainSurfaceDelegate(context, attrs, defStyleAttr, defStyleRes,
+                "DigitalRainSurfaceView");
+
+        // Let the views behind show through
+        getHolder().setFormat(PixelFormat.TRANSLUCENT);
+        getHolder().addCallback(this);
+
+        // Set a stateful text color
+        setEnabled(isEnabled());
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            mDelegate.setDisplay(getDisplay());
+        }
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+
+        mDelegate.setWindowVisible(visibility == VISIBLE);
+    }
+
+    @Override
+    public void surfaceCreated(@NonNull SurfaceHolder holder) {
+    }
+
+    @Override
+    public void surfaceChanged(@NonNull SurfaceHolder holder, int format, int width, int height) {
+        mDelegate.setSurface(holder.getSurface(), width, height);
+    }
+
+    @Override
+    public void surfaceDestroyed(@NonNull SurfaceHolder holder) {
+        // Waits for any frame in progress
+        mDelegate.setSurface(null, 0, 0);
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        super.setEnabled(enabled);
+        setTextColor(mDelegate.getTextColor());
+    }
+
+    /**
+     * Start the rain. Frames are rendered once the surface is available.
+     */
+    public void start() {
+        mDelegate.setRunning(true);
+    }
+
+    /**
+     * Stop the rain. The last frame is left on the surface.
+     */
+    public void stop() {
+        mDelegate.setRunning(false);
+    }
+
+    /**
+     * Check if the rain is running.
+     *
+     * @return True if running.
+     */
+    public boolean isRunning() {
+        return mDelegate.isRunning();
+    }
+
+    /**
+     * Get the renderer for the rain. It holds the rain settings shared with {@link DigitalRain},
+     * which take effect with the next frame.
+     *
+     * @return Renderer for the rain.
+     */
+    @NonNull
+    public RainRenderer getRainRenderer() {
+        return mDelegate.getRainRenderer();
+    }
+
+    /**
+     * Get the time interval in milliseconds for rain speed. This is how fast it updates.
+     *
+     * @return Falling rain speed.
+     */
+    public int getRainSpeed() {
+        return mDelegate.getRainSpeed();
+    }
+
+    /**
+     * Set the time interval in milliseconds for rain speed. This is how fast it updates.
+     *
+     * @param rainSpeed Falling rain speed.
+     */
+    public void setRainSpeed(int rainSpeed) {
+        mDelegate.setRainSpeed(rainSpeed);
+    }
+
+    /**
+     * Get the auto start status. This determines if the rain runs whenever the window is visible.
+     *
+     * @return Auto start status.
+     */
+    public boolean isAutoStart() {
+        return mDelegate.isAutoStart();
+    }
+
+    /**
+     * Set the auto start status. This determines if the rain runs whenever the window is visible.
+     *
+     * @param autoStart Auto start status.
+     */
+    public void setAutoStart(boolean autoStart) {
+        mDelegate.setAutoStart(autoStart);
+    }
+
+    /**
+     * Get the rain text color. The default and disabled states are used for the paint color.
+     *
+     * @return ColorStateList color.
+     */
+    @NonNull
+    public ColorStateList getTextColor() {
+        return mDelegate.getTextColor();
+    }
+
+    /**
+     * Set the rain text color. The default and disabled states are used for the paint color.
+     *
+     * @param textColor ColorStateList color.
+     */
+    public void setTextColor(@NonNull ColorStateList textColor) {
+        mDelegate.setTextColor(textColor, getDrawableState());
+    }
+
+    /**
+     * Set the rain text color. This is a convenience method for setting the color state.
+     *
+     * @param color Color integer.
+     */
+    public void setTextColor(@ColorInt int color) {
+        setTextColor(ColorStateList.valueOf(color));
+    }
+
+    /**
+     * Get the rain text size. This gets the equivalent property in the text paint object.
+     *
+     * @return Size of the rain text.
+     */
+    public float getTextSize() {
+        return mDelegate.getTextSize();
+    }
+
+    /**
+     * Set the rain text size. This sets the equivalent property in the text paint object.
+     *
+     * @param textSize Size of the rain text.
+     */
+    public void setTextSize(float textSize) {
+        mDelegate.setTextSize(textSize);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.TypedArray;
+import android.graphics.Paint;
+import android.hardware.display.DisplayManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.service.wallpaper.WallpaperService;
+import android.view.Display;
+import android.view.SurfaceHolder;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.StyleRes;
+
+/**
+ * A live wallpaper of the digital rain. The frames are rendered on a background thread only while
+ * the wallpaper is visible, and nothing is held while it is hidden. Previews and power saving use
+ * fewer columns or a slower tick rate.
+ *
+ * <p>The service is declared by the app, with the {@code android.permission.BIND_WALLPAPER}
+ * permission and the {@code @xml/digital_rain_wallpaper} meta-data. Subclasses can style the rain
+ * with {@link #getRainStyle()}.</p>
+ */
+public class DigitalRainWallpaperService extends WallpaperService {
+
+    private static final int RAIN_SPEED = 100; // ms
+    private static final float TEXT_SIZE = 14; // sp
+    private static final float PREVIEW_TEXT_SCALE = 1.5f;
+    private static final int PREVIEW_SPEED_SCALE = 2;
+    private static final int POWER_SAVE_SPEED_SCALE = 2;
+
+    @Override
+    public Engine onCreateEngine() {
+        return new RainEngine();
+    }
+
+    /**
+     * Get the style used for the rain. It can set any of the {@link R.styleable#DigitalRain
+     * DigitalRain Attributes}, except for the animator.
+     *
+     * @return Style resource, or 0 for the defaults.
+     */
+    @StyleRes
+    protected int getRainStyle() {
+        return 0;
+    }
+
+    /**
+     * Wallpaper engine that posts the rain to the wallpaper surface.
+     */
+    public class RainEngine extends Engine {
+
+        private RainRenderer mRainRenderer;
+        private RainSurface mRainSurface;
+        private PowerManager mPowerManager;
+        private int mRainSpeed;
+
+        @Override
+        public void onCreate(SurfaceHolder surfaceHolder) {
+            super.onCreate(surfaceHolder);
+
+            TypedArray typedArray = getTheme()
+                    .obtainStyledAttributes(null, R.styleable.DigitalRain, 0, getRainStyle());
+
+            // Initialize the drawing objects
+            Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            textPaint.setStyle(Paint.Style.FILL);
+
+            mRainRenderer = new RainRenderer(textPaint);
+            mRainSurface = new RainSurface(mRainRenderer, "DigitalRainWallpaper");
+
+            ColorStateList textColor;
+            float textSize;
+
+            try {
+                mRainRenderer.setAttributes(typedArray);
+                mRainSpeed = typedArray.getInt(R.styleable.DigitalRain_rainSpeed, RAIN_SPEED);
+                textColor = typedArray.getColorStateList(R.styleable.DigitalRain_android_textColor);
+                textSize = typedArray.getDimension(R.styleable.DigitalRain_android_textSize,
+                        DigitalRain.dpToPixels(DigitalRainWallpaperService.this, TEXT_SIZE));
+            } finally {
+                typedArray.recycle();
+            }
+
+            // Provide some default colors
+            if (textColor == null) {
+                textColor = DigitalRain.getDefaultTextColor(DigitalRainWallpaperService.this);
+            }
+
+            // Sanitize the input values
+            mRainSpeed = Math.max(mRainSpeed, 0);
+
+            // Fewer columns for the preview
+            if (isPreview()) {
+                textSize *= PREVIEW_TEXT_SCALE;
+            }
+
+            textPaint.setTextSize(textSize);
+            textPaint.setColor(textColor.getDefaultColor());
+
+            mPowerManager = (PowerManager) getSystemService(POWER_SERVICE);
+
+            // Frames are never closer together than the display refresh
+            Display display = getDisplay();
+
+            if (display != null) {
+                mRainSurface.setRefreshRate(display.getRefreshRate());
+            }
+
+            // Drawn at the surface size, so scrolling changes nothing
+            setOffsetNotificationsEnabled(false);
+        }
+
+        @Override
+        public void onVisibilityChanged(boolean visible) {
+            super.onVisibilityChanged(visible);
+
+            if (visible) {
+                mRainSurface.setRainSpeed(getFrameInterval());
+                mRainSurface.setRunning(true);
+            } else {
+                mRainSurface.setRunning(false);
+
+                // Nothing to hold while hidden
+                mRainSurface.releaseBuffers();
+            }
+        }
+
+        @Override
+        public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+            super.onSurfaceChanged(holder, format, width, height);
+            mRainSurface.setSurface(holder.getSurface(), width, height);
+        }
+
+        @Override
+        public void onSurfaceDestroyed(SurfaceHolder holder) {
+            // Waits for any frame in progress
+            mRainSurface.setSurface(null, 0, 0);
+            super.onSurfaceDestroyed(holder);
+        }
+
+        @Override
+        public void onDestroy() {
+            mRainSurface.setRunning(false);
+            mRainSurface.setSurface(null, 0, 0);
+            mRainSurface.releaseBuffers();
+            super.onDestroy();
+        }
+
+        /**
+         * Get the renderer for the rain. Its settings take effect with the next frame.
+         *
+         * @return Renderer for the rain.
+         */
+        @NonNull
+        public RainRenderer getRainRenderer() {
+            return mRainRenderer;
+        }
+
+        /**
+         * Find the display the wallpaper is shown on. Before Android 11 this is the default display,
+         * and before Android 4.2 it is not known.
+         *
+         * @return Display of the wallpaper, or null if not known.
+         */
+        @Nullable
+        private Display getDisplay() {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                Context displayContext = getDisplayContext();
+                return displayContext != null ? displayContext.getDisplay() : null;
+            }
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                DisplayManager displayManager = (DisplayManager) getSystemService(DISPLAY_SERVICE);
+                return displayManager != null ? displayManager.getDisplay(Display.DEFAULT_DISPLAY) : null;
+            }
+
+            return null;
+        }
+
+        /**
+         * Find the time between frames. It is longer for the preview and in power save mode.
+         *
+         * @return Time interval in milliseconds.
+         */
+        private int getFrameInterval() {
+            int interval = mRainSpeed;
+
+            if (isPreview()) {
+                interval *= PREVIEW_SPEED_SCALE;
+            }
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && mPowerManager != null
+                    && mPowerManager.isPowerSaveMode()) {
+                interval *= POWER_SAVE_SPEED_SCALE;
+            }
+
+            return interval;
+        }
+    }
+}
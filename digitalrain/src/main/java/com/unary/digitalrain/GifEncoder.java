@@ -0,0 +1,374 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Encodes the recorded frames as an animated GIF that loops forever. Each frame has its own
+ * palette of its 256 most used colors, found at 5 bits per channel, which suits a rain of one hue.
+ * The buffers are reused from frame to frame, and the stream is written as it goes.
+ *
+ * <p>The stream is not closed by the encoder.</p>
+ */
+public class GifEncoder implements RainRecorder.FrameEncoder {
+
+    private static final int MAX_COLORS = 256;
+    private static final int BUCKETS = 1 << 15;
+    private static final int MAX_CODES = 4096;
+    private static final int HASH_SIZE = 5003;
+    private static final int CLEAR_CODE = MAX_COLORS;
+    private static final int END_CODE = CLEAR_CODE + 1;
+    private static final int MIN_CODE_SIZE = 8;
+
+    private final OutputStream mOut;
+    private int mWidth;
+    private int mHeight;
+    private int mDelay;
+    private int[] mPixels;
+    private byte[] mIndices;
+    private int[] mCounts;
+    private short[] mColorIndices;
+    private long[] mSortedBuckets;
+    private int[] mPalette;
+    private int[] mHashKeys;
+    private short[] mHashCodes;
+    private byte[] mBlock;
+    private int mBlockSize;
+    private int mBits;
+    private int mBitCount;
+
+    /**
+     * Constructor to write the GIF to a stream.
+     *
+     * @param out Stream to write to.
+     */
+    public GifEncoder(@NonNull OutputStream out) {
+        mOut = out;
+    }
+
+    @Override
+    public void start(int width, int height, int frameDelay) throws IOException {
+        mWidth = Math.min(width, 0xFFFF);
+        mHeight = Math.min(height, 0xFFFF);
+        mDelay = Math.max(Math.round(frameDelay / 10f), 1);
+
+        mPixels = new int[mWidth * mHeight];
+        mIndices = new byte[mWidth * mHeight];
+        mCounts = new int[BUCKETS];
+        mColorIndices = new short[BUCKETS];
+        mSortedBuckets = new long[BUCKETS];
+        mPalette = new int[MAX_COLORS];
+        mHashKeys = new int[HASH_SIZE];
+        mHashCodes = new short[HASH_SIZE];
+        mBlock = new byte[255];
+
+        // Header and logical screen, without a global palette
+        writeString("GIF89a");
+        writeShort(mWidth);
+        writeShort(mHeight);
+        mOut.write(0);
+        mOut.write(0);
+        mOut.write(0);
+
+        // Loop forever
+        mOut.write(0x21);
+        mOut.write(0xFF);
+        mOut.write(11);
+        writeString("NETSCAPE2.0");
+        mOut.write(3);
+        mOut.write(1);
+        writeShort(0);
+        mOut.write(0);
+    }
+
+    @Override
+    public void encode(@NonNull Bitmap frame) throws IOException {
+        frame.getPixels(mPixels, 0, mWidth, 0, 0, mWidth, mHeight);
+
+        int colors = findPalette();
+
+        // Graphic control, with the frame left in place
+        mOut.write(0x21);
+        mOut.write(0xF9);
+        mOut.write(4);
+        mOut.write(1 << 2);
+        writeShort(mDelay);
+        mOut.write(0);
+        mOut.write(0);
+
+        // Image descriptor with a local palette of 256 colors
+        mOut.write(0x2C);
+        writeShort(0);
+        writeShort(0);
+        writeShort(mWidth);
+        writeShort(mHeight);
+        mOut.write(0x80 | 7);
+
+        for (int i = 0; i < MAX_COLORS; i++) {
+            int color = i < colors ? mPalette[i] : 0;
+
+            mOut.write(color >> 16 & 0xFF);
+            mOut.write(color >> 8 & 0xFF);
+            mOut.write(color & 0xFF);
+        }
+
+        writeImageData();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        mOut.write(0x3B);
+        mOut.flush();
+
+        // Nothing is held once done
+        mPixels = null;
+        mIndices = null;
+    }
+
+    /**
+     * Find the palette for the frame and the palette index of each pixel. The most used colors are
+     * kept, and any others take the nearest of them.
+     *
+     * @return Number of colors in the palette.
+     */
+    private int findPalette() {
+        Arrays.fill(mCounts, 0);
+
+        for (int pixel : mPixels) {
+            mCounts[getBucket(pixel)]++;
+        }
+
+        int used = 0;
+
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if (mCounts[bucket] > 0) {
+                mSortedBuckets[used++] = (long) mCounts[bucket] << 15 | bucket;
+            }
+        }
+
+        // Most used first
+        Arrays.sort(mSortedBuckets, 0, used);
+
+        int colors = Math.min(used, MAX_COLORS);
+
+        for (int i = 0; i < colors; i++) {
+            int bucket = (int) (mSortedBuckets[used - 1 - i] & (BUCKETS - 1));
+
+            mPalette[i] = getColor(bucket);
+            mColorIndices[bucket] = (short) i;
+        }
+
+        for (int i = colors; i < used; i++) {
+            int bucket = (int) (mSortedBuckets[used - 1 - i] & (BUCKETS - 1));
+            mColorIndices[bucket] = (short) findNearest(getColor(bucket), colors);
+        }
+
+        for (int i = 0; i < mPixels.length; i++) {
+            mIndices[i] = (byte) mColorIndices[getBucket(mPixels[i])];
+        }
+
+        return colors;
+    }
+
+    /**
+     * Find the palette color nearest to a color.
+     *
+     * @param color  Color to match.
+     * @param colors Number of colors in the palette.
+     * @return Index of the nearest color.
+     */
+    private int findNearest(int color, int colors) {
+        int nearest = 0;
+        int minDistance = Integer.MAX_VALUE;
+
+        for (int i = 0; i < colors; i++) {
+            int red = (color >> 16 & 0xFF) - (mPalette[i] >> 16 & 0xFF);
+            int green = (color >> 8 & 0xFF) - (mPalette[i] >> 8 & 0xFF);
+            int blue = (color & 0xFF) - (mPalette[i] & 0xFF);
+            int distance = red * red + green * green + blue * blue;
+
+            if (distance < minDistance) {
+                minDistance = distance;
+                nearest = i;
+            }
+        }
+
+        return nearest;
+    }
+
+    /**
+     * Compress the palette indices of the frame with variable length LZW codes, as GIF needs.
+     *
+     * @throws IOException If the stream fails.
+     */
+    private void writeImageData() throws IOException {
+        mOut.write(MIN_CODE_SIZE);
+
+        int codeSize = MIN_CODE_SIZE + 1;
+        int nextCode = END_CODE + 1;
+        int prefix = mIndices[0] & 0xFF;
+
+        Arrays.fill(mHashKeys, -1);
+        writeCode(CLEAR_CODE, codeSize);
+
+        for (int i = 1; i < mIndices.length; i++) {
+            int index = mIndices[i] & 0xFF;
+            int key = prefix << 8 | index;
+            int slot = key % HASH_SIZE;
+
+            while (mHashKeys[slot] != -1 && mHashKeys[slot] != key) {
+                slot = slot + 1 == HASH_SIZE ? 0 : slot + 1;
+            }
+
+            // Carry on with the longer string if it is known
+            if (mHashKeys[slot] == key) {
+                prefix = mHashCodes[slot];
+                continue;
+            }
+
+            writeCode(prefix, codeSize);
+
+            if (nextCode < MAX_CODES) {
+                mHashKeys[slot] = key;
+                mHashCodes[slot] = (short) nextCode++;
+
+                if (nextCode > 1 << codeSize && codeSize < 12) {
+                    codeSize++;
+                }
+            } else {
+                // Start again once the table is full
+                writeCode(CLEAR_CODE, codeSize);
+                Arrays.fill(mHashKeys, -1);
+                codeSize = MIN_CODE_SIZE + 1;
+                nextCode = END_CODE + 1;
+            }
+
+            prefix = index;
+        }
+
+        writeCode(prefix, codeSize);
+        writeCode(END_CODE, codeSize);
+
+        // Remaining bits and the last block
+        if (mBitCount > 0) {
+            writeByte(mBits & 0xFF);
+            mBits = 0;
+            mBitCount = 0;
+        }
+
+        flushBlock();
+        mOut.write(0);
+    }
+
+    /**
+     * Add a code to the bit stream, least significant bit first.
+     *
+     * @param code     Code to write.
+     * @param codeSize Number of bits in the code.
+     * @throws IOException If the stream fails.
+     */
+    private void writeCode(int code, int codeSize) throws IOException {
+        mBits |= code << mBitCount;
+        mBitCount += codeSize;
+
+        while (mBitCount >= 8) {
+            writeByte(mBits & 0xFF);
+            mBits >>>= 8;
+            mBitCount -= 8;
+        }
+    }
+
+    /**
+     * Add a byte to the current data block, writing the block once it is full.
+     *
+     * @param b Byte to write.
+     * @throws IOException If the stream fails.
+     */
+    private void writeByte(int b) throws IOException {
+        mBlock[mBlockSize++] = (byte) b;
+
+        if (mBlockSize == mBlock.length) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * Write the current data block with its length.
+     *
+     * @throws IOException If the stream fails.
+     */
+    private void flushBlock() throws IOException {
+        if (mBlockSize == 0) return;
+
+        mOut.write(mBlockSize);
+        mOut.write(mBlock, 0, mBlockSize);
+        mBlockSize = 0;
+    }
+
+    /**
+     * Write a 16-bit value, least significant byte first.
+     *
+     * @param value Value to write.
+     * @throws IOException If the stream fails.
+     */
+    private void writeShort(int value) throws IOException {
+        mOut.write(value & 0xFF);
+        mOut.write(value >> 8 & 0xFF);
+    }
+
+    /**
+     * Write the characters of an ASCII string.
+     *
+     * @param s String to write.
+     * @throws IOException If the stream fails.
+     */
+    private void writeString(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            mOut.write(s.charAt(i));
+        }
+    }
+
+    /**
+     * Get the bucket of a color, at 5 bits per channel.
+     *
+     * @param color Color of the pixel.
+     * @return Bucket index.
+     */
+    private static int getBucket(int color) {
+        return (color >> 19 & 0x1F) << 10 | (color >> 11 & 0x1F) << 5 | (color >> 3 & 0x1F);
+    }
+
+    /**
+     * Get the color of a bucket, with each channel expanded back to 8 bits.
+     *
+     * @param bucket Bucket index.
+     * @return Color of the bucket.
+     */
+    private static int getColor(int bucket) {
+        int red = bucket >> 10 & 0x1F;
+        int green = bucket >> 5 & 0x1F;
+        int blue = bucket & 0x1F;
+
+        return (red << 3 | red >> 2) << 16 | (green << 3 | green >> 2) << 8 | (blue << 3 | blue >> 2);
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+import android.graphics.Bitmap;
+import android.graphics.BlurMaskFilter;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.os.Build;
+
+import com.unary.digitalrain.core.RainAlphabet;
+
+import java.util.Arrays;
+
+/**
+ * Pre-renders the rain characters into tiles of a single alpha bitmap. Drawing a character is then
+ * a blit from the tile, tinted by the color of the paint it is drawn with. Each character is
+ * centered in its column by its advance.
+ */
+public class GlyphAtlas {
+
+    private static final int COLUMNS = 16;
+
+    private Bitmap mBitmap;
+    private char[] mGlyphs;
+    private float[] mAdvances;
+    private int mGlyphCount;
+    private int mTileWidth;
+    private int mTileHeight;
+    private int mBaseline;
+    private int mPadding;
+
+    private float mTextSize;
+    private float mTextScaleX;
+    private float mTextSkewX;
+    private int mFlags;
+    private Typeface mTypeface;
+    private float mRadius;
+    private RainAlphabet mAlphabet;
+
+    /**
+     * Constructor to render the printable Latin-1 characters with the given paint and an optional
+     * blur.
+     *
+     * @param paint  Paint to render the characters with.
+     * @param radius Blur radius to bake into the characters, or 0 for none.
+     */
+    public GlyphAtlas(Paint paint, float radius) {
+        this(paint, radius, RainAlphabet.LATIN_1);
+    }
+
+    /**
+     * Constructor to render each character of an alphabet with the given paint and an optional
+     * blur. Characters the typeface has no glyph for are left out where this can be checked.
+     *
+     * @param paint    Paint to render the characters with.
+     * @param radius   Blur radius to bake into the characters, or 0 for none.
+     * @param alphabet Characters to render.
+     */
+    public GlyphAtlas(Paint paint, float radius, RainAlphabet alphabet) {
+        mTextSize = paint.getTextSize();
+        mTextScaleX = paint.getTextScaleX();
+        mTextSkewX = paint.getTextSkewX();
+        mFlags = paint.getFlags();
+        mTypeface = paint.getTypeface();
+        mRadius = radius;
+        mAlphabet = alphabet;
+
+        Paint glyphPaint = new Paint(paint);
+        glyphPaint.setColor(0xFFFFFFFF);
+
+        if (radius > 0) {
+            glyphPaint.setMaskFilter(new BlurMaskFilter(radius, BlurMaskFilter.Blur.NORMAL));
+        }
+
+        mGlyphs = getPrintableGlyphs(glyphPaint, alphabet);
+        mGlyphCount = mGlyphs.length;
+        mAdvances = new float[mGlyphCount];
+
+        float maxWidth = 0;
+
+        glyphPaint.getTextWidths(mGlyphs, 0, mGlyphCount, mAdvances);
+
+        for (float advance : mAdvances) {
+            maxWidth = Math.max(maxWidth, advance);
+        }
+
+        // Leave room for the blur to spread
+        Paint.FontMetrics metrics = glyphPaint.getFontMetrics();
+        mPadding = (int) Math.ceil(radius * 2) + 1;
+        mTileWidth = (int) Math.ceil(Math.max(maxWidth, mTextSize)) + 2 * mPadding;
+        mTileHeight = (int) Math.ceil(metrics.bottom - metrics.top) + 2 * mPadding;
+        mBaseline = mPadding + (int) Math.ceil(-metrics.top);
+
+        int rows = (mGlyphCount + COLUMNS - 1) / COLUMNS;
+
+        mBitmap = Bitmap.createBitmap(COLUMNS * mTileWidth, rows * mTileHeight, Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(mBitmap);
+
+        for (int i = 0; i < mGlyphCount; i++) {
+            float x = (i % COLUMNS) * mTileWidth + mPadding + Math.max((mTextSize - mAdvances[i]) / 2, 0);
+            float y = (i / COLUMNS) * mTileHeight + mBaseline;
+
+            canvas.drawText(mGlyphs, i, 1, x, y, glyphPaint);
+        }
+    }
+
+    /**
+     * Find the characters of an alphabet that the paint can draw. From M the typeface is checked
+     * for each one, so no tofu boxes are rendered. All of them are kept if none would be left.
+     *
+     * @param paint    Paint to render the characters with.
+     * @param alphabet Characters to render.
+     * @return Characters to render.
+     */
+    private static char[] getPrintableGlyphs(Paint paint, RainAlphabet alphabet) {
+        char[] chars = alphabet.toCharArray();
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) return chars;
+
+        char[] glyphs = new char[chars.length];
+        int count = 0;
+
+        for (char c : chars) {
+            if (paint.hasGlyph(String.valueOf(c))) {
+                glyphs[count++] = c;
+            }
+        }
+
+        return count > 0 ? Arrays.copyOf(glyphs, count) : chars;
+    }
+
+    /**
+     * Check if the atlas was rendered from the same inputs, with the printable Latin-1 characters.
+     * Color is not one of them, as it is applied when the characters are drawn.
+     *
+     * @param paint  Paint to render the characters with.
+     * @param radius Blur radius to bake into the characters, or 0 for none.
+     * @return True if the atlas can be reused.
+     */
+    public boolean matches(Paint paint, float radius) {
+        return matches(paint, radius, RainAlphabet.LATIN_1);
+    }
+
+    /**
+     * Check if the atlas was rendered from the same inputs. Color is not one of them, as it is
+     * applied when the characters are drawn.
+     *
+     * @param paint    Paint to render the characters with.
+     * @param radius   Blur radius to bake into the characters, or 0 for none.
+     * @param alphabet Characters to render.
+     * @return True if the atlas can be reused.
+     */
+    public boolean matches(Paint paint, float radius, RainAlphabet alphabet) {
+        return mAlphabet.equals(alphabet)
+                && mTextSize == paint.getTextSize()
+                && mTextScaleX == paint.getTextScaleX()
+                && mTextSkewX == paint.getTextSkewX()
+                && mFlags == paint.getFlags()
+                && mTypeface == paint.getTypeface()
+                && mRadius == radius;
+    }
+
+    /**
+     * Get the number of characters in the atlas.
+     *
+     * @return Character count.
+     */
+    public int getGlyphCount() {
+        return mGlyphCount;
+    }
+
+    /**
+     * Get a character in the atlas.
+     *
+     * @param glyph Index of the character in the atlas.
+     * @return The character.
+     */
+    public char getGlyph(int glyph) {
+        return mGlyphs[glyph];
+    }
+
+    /**
+     * Get the advance of a character, as measured when it was rendered.
+     *
+     * @param glyph Index of the character in the atlas.
+     * @return Advance in pixels.
+     */
+    public float getGlyphAdvance(int glyph) {
+        return mAdvances[glyph];
+    }
+
+    /**
+     * Get how far a drawn character can reach past the edges of its column, including any blur.
+     *
+     * @return Overhang in pixels.
+     */
+    public int getOverhang() {
+        return (int) Math.ceil(mTileWidth - mTextSize) + 1;
+    }
+
+    /**
+     * Get the rendered characters. Each one is a tile found with {@link #getGlyphRects}.
+     *
+     * @return Alpha bitmap of the characters.
+     */
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    /**
+     * Find the tile for a character and where to draw it for the given text origin, as it would be
+     * with {@link Canvas#drawText}. The rects are provided by the caller so that different threads
+     * can draw from the same atlas.
+     *
+     * @param glyph   Index of the character in the atlas.
+     * @param x       Origin of the text.
+     * @param y       Baseline of the text.
+     * @param srcRect Tile in the atlas bitmap.
+     * @param dstRect Destination on the canvas.
+     */
+    public void getGlyphRects(int glyph, float x, float y, Rect srcRect, Rect dstRect) {
+        int left = (glyph % COLUMNS) * mTileWidth;
+        int top = (glyph / COLUMNS) * mTileHeight;
+        int dstLeft = (int) x - mPadding;
+        int dstTop = (int) y - mBaseline;
+
+        srcRect.set(left, top, left + mTileWidth, top + mTileHeight);
+        dstRect.set(dstLeft, dstTop, dstLeft + mTileWidth, dstTop + mTileHeight);
+    }
+}
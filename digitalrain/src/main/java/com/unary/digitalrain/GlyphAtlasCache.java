@@ -0,0 +1,68 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+import android.graphics.Paint;
+
+import com.unary.digitalrain.core.RainAlphabet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Atlases shared between renderers, so that rain with the same text settings renders its
+ * characters only once. The oldest atlas is dropped once the cache is full.
+ */
+class GlyphAtlasCache {
+
+    private static final int MAX_SIZE = 16;
+
+    private final List<GlyphAtlas> mGlyphAtlases = new ArrayList<>();
+
+    /**
+     * Get an atlas rendered with the given inputs, creating it if there is none.
+     *
+     * @param paint    Paint to render the characters with.
+     * @param radius   Blur radius to bake into the characters, or 0 for none.
+     * @param alphabet Characters to render.
+     * @return Atlas for the inputs.
+     */
+    synchronized GlyphAtlas obtain(Paint paint, float radius, RainAlphabet alphabet) {
+        for (int i = 0; i < mGlyphAtlases.size(); i++) {
+            GlyphAtlas glyphAtlas = mGlyphAtlases.get(i);
+
+            if (glyphAtlas.matches(paint, radius, alphabet)) {
+                return glyphAtlas;
+            }
+        }
+
+        if (mGlyphAtlases.size() == MAX_SIZE) {
+            mGlyphAtlases.remove(0);
+        }
+
+        GlyphAtlas glyphAtlas = new GlyphAtlas(paint, radius, alphabet);
+        mGlyphAtlases.add(glyphAtlas);
+
+        return glyphAtlas;
+    }
+
+    /**
+     * Drop all of the atlases. Renderers keep the ones they are using.
+     */
+    synchronized void clear() {
+        mGlyphAtlases.clear();
+    }
+}
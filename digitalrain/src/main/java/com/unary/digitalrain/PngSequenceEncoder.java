@@ -0,0 +1,78 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Encodes the recorded frames as numbered PNG files in a directory, such as
+ * <code>rain00000.png</code>, <code>rain00001.png</code> and so on. Each frame is written as soon
+ * as it is drawn, so nothing is kept between frames.
+ */
+public class PngSequenceEncoder implements RainRecorder.FrameEncoder {
+
+    private final File mDirectory;
+    private final String mPrefix;
+    private int mFrame;
+
+    /**
+     * Constructor to write the frames to a directory.
+     *
+     * @param directory Directory to write to.
+     * @param prefix    Start of each file name.
+     */
+    public PngSequenceEncoder(@NonNull File directory, @NonNull String prefix) {
+        mDirectory = directory;
+        mPrefix = prefix;
+    }
+
+    @Override
+    public void start(int width, int height, int frameDelay) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + mDirectory);
+        }
+
+        mFrame = 0;
+    }
+
+    @Override
+    public void encode(@NonNull Bitmap frame) throws IOException {
+        File file = new File(mDirectory, String.format(Locale.US, "%s%05d.png", mPrefix, mFrame++));
+
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+
+        try {
+            if (!frame.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                throw new IOException("Unable to write " + file);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    public void finish() {
+    }
+}
@@ -15,22 +15,43 @@
  */
 package com.unary.digitalrain;
 
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Shader;
+import android.os.Build;
+
+import com.unary.digitalrain.core.GlyphRenderer;
+import com.unary.digitalrain.core.RainRandom;
+import com.unary.digitalrain.core.RainSimulation;
 
 /**
- * Creates a rain shower effect of falling random ASCII characters on the given canvas.
+ * Creates a rain shower effect of falling random ASCII characters on the given canvas. The drops
+ * are a {@link RainSimulation}, and this only draws its characters. They are collected into one
+ * mesh textured from the atlas, so each frame is a single draw call.
  */
-public class Rain {
+public class Rain implements RainLayer, GlyphRenderer {
 
-    private static final char ASCII_MIN = 32;
-    private static final char ASCII_MAX = 255;
-    private static final int MULTIPLIER = 10;
+    private static final int MAX_BATCH_GLYPHS = Short.MAX_VALUE / 4;
 
     private Canvas mCanvas;
     private Paint mPaint;
-    private int[] mPositions;
-    private float mDropRate;
+    private GlyphAtlas mGlyphAtlas;
+    private RainSimulation mSimulation;
+    private Bitmap mBitmap;
+    private Rect mSrcRect;
+    private Rect mDstRect;
+    private int mStart;
+    private float mTextSize;
+    private boolean mBatched;
+    private float[] mVerts;
+    private float[] mTexs;
+    private short[] mIndices;
+    private int[] mFirstGlyphs;
+    private int mGlyphCount;
+    private int mFilledColumns;
 
     /**
      * Constructor to initialize the rain with a few visible drops placed within the field.
@@ -39,37 +60,181 @@ public class Rain {
      * @param paint  Paint to draw with.
      */
     public Rain(Canvas canvas, Paint paint) {
+        this(canvas, paint, new GlyphAtlas(paint, 0), 0, getColumnCount(canvas.getWidth(), paint.getTextSize()),
+                new RainRandom(), false);
+    }
+
+    /**
+     * Constructor to initialize the rain for a range of columns only, with characters drawn from a
+     * pre-rendered atlas. The other columns can be drawn at the same time by other instances, each
+     * with its own canvas. A seeded generator gives the same rain every time.
+     *
+     * @param canvas     Drawing canvas to use.
+     * @param paint      Paint to draw with.
+     * @param glyphAtlas Characters rendered with the paint.
+     * @param start      First column to draw.
+     * @param end        Column after the last to draw.
+     * @param random     Random numbers for the drops and characters.
+     * @param varied     True for drops of different speeds and lengths.
+     */
+    Rain(Canvas canvas, Paint paint, GlyphAtlas glyphAtlas, int start, int end, RainRandom random, boolean varied) {
         mCanvas = canvas;
-        mPaint = paint;
+        mGlyphAtlas = glyphAtlas;
+        mBitmap = glyphAtlas.getBitmap();
+        mSrcRect = new Rect();
+        mDstRect = new Rect();
+        mStart = start;
+
+        // Any blur is already in the atlas
+        mPaint = new Paint(paint);
+        mPaint.setMaskFilter(null);
+        mTextSize = mPaint.getTextSize();
 
-        float textSize = mPaint.getTextSize();
+        mSimulation = new RainSimulation(end - start, canvas.getHeight(), mTextSize,
+                glyphAtlas.getGlyphCount(), random, varied);
 
-        mPositions = new int[(int) (canvas.getWidth() / textSize) + 1];
-        mDropRate = 1 - textSize / canvas.getHeight();
+        int columns = mSimulation.getColumnCount();
 
-        // Start with a few drops
-        for (int i = 0; i < mPositions.length; i++) {
-            mPositions[i] = (int) (Math.random() * canvas.getHeight() * MULTIPLIER / textSize);
+        // Hardware canvases only draw meshes from Q, and the paint may have its own shader
+        mBatched = (!canvas.isHardwareAccelerated() || Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+                && mPaint.getShader() == null && columns <= MAX_BATCH_GLYPHS;
+
+        // Characters are kept until drawn, at most one for each column
+        mVerts = new float[columns * 8];
+        mTexs = new float[columns * 8];
+        mFirstGlyphs = new int[columns + 1];
+
+        if (mBatched) {
+            mPaint.setShader(new BitmapShader(mBitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP));
+
+            mIndices = new short[columns * 6];
+
+            // Two triangles for each character
+            for (int i = 0; i < columns; i++) {
+                int vertex = i * 4;
+
+                mIndices[i * 6] = (short) vertex;
+                mIndices[i * 6 + 1] = (short) (vertex + 1);
+                mIndices[i * 6 + 2] = (short) (vertex + 2);
+                mIndices[i * 6 + 3] = (short) vertex;
+                mIndices[i * 6 + 4] = (short) (vertex + 2);
+                mIndices[i * 6 + 5] = (short) (vertex + 3);
+            }
         }
     }
 
     /**
-     * Update the canvas with random ASCII characters drawn into position below the last.
+     * Update the canvas with random ASCII characters drawn into position below the last. Nothing is
+     * allocated here, as it runs for every frame.
      */
+    @Override
     public void draw() {
-        float textSize = mPaint.getTextSize();
+        tick();
+        drawColumns(mCanvas, 0, mSimulation.getColumnCount());
+    }
 
-        for (int i = 0; i < mPositions.length; i++) {
-            String character = "" + (char) (Math.random() * (ASCII_MAX - ASCII_MIN) + ASCII_MIN);
+    @Override
+    public void tick() {
+        mGlyphCount = 0;
+        mFilledColumns = 0;
+        mSimulation.tick(this);
 
-            mCanvas.drawText(character, i * textSize, mPositions[i] * textSize, mPaint);
+        // Columns after the last character start at the end
+        while (mFilledColumns < mFirstGlyphs.length) {
+            mFirstGlyphs[mFilledColumns++] = mGlyphCount;
+        }
+    }
 
-            // Fall past the screen height
-            if (mPositions[i] * textSize > mCanvas.getHeight() && Math.random() > mDropRate) {
-                mPositions[i] = 0;
-            }
+    @Override
+    public void drawColumns(Canvas canvas, int start, int end) {
+        int first = mFirstGlyphs[start];
+        int count = mFirstGlyphs[end] - first;
+
+        if (count < 1) return;
+
+        if (mBatched) {
+            canvas.drawVertices(Canvas.VertexMode.TRIANGLES, count * 8, mVerts, first * 8, mTexs, first * 8,
+                    null, 0, mIndices, 0, count * 6, mPaint);
+            return;
+        }
 
-            mPositions[i]++;
+        for (int i = first; i < first + count; i++) {
+            getQuad(mTexs, i * 8, mSrcRect);
+            getQuad(mVerts, i * 8, mDstRect);
+            canvas.drawBitmap(mBitmap, mSrcRect, mDstRect, mPaint);
         }
     }
+
+    /**
+     * Set the canvas to draw on from the next frame. The canvas should be the same size, as the
+     * drops stay where they are.
+     *
+     * @param canvas Drawing canvas to use.
+     */
+    public void setCanvas(Canvas canvas) {
+        mCanvas = canvas;
+    }
+
+    @Override
+    public RainSimulation getSimulation() {
+        return mSimulation;
+    }
+
+    @Override
+    public void drawGlyph(int glyph, int column, int row) {
+        mGlyphAtlas.getGlyphRects(glyph, (mStart + column) * mTextSize, row * mTextSize, mSrcRect, mDstRect);
+
+        // Characters come in column order, so each column starts where the last one ended
+        while (mFilledColumns <= column) {
+            mFirstGlyphs[mFilledColumns++] = mGlyphCount;
+        }
+
+        // Corners go clockwise from the top left
+        int offset = mGlyphCount * 8;
+
+        setQuad(mVerts, offset, mDstRect);
+        setQuad(mTexs, offset, mSrcRect);
+
+        mGlyphCount++;
+    }
+
+    /**
+     * Write the corners of a rect into a vertex array.
+     *
+     * @param array  Vertex array to write to.
+     * @param offset Index of the first corner.
+     * @param rect   Rect to write.
+     */
+    private static void setQuad(float[] array, int offset, Rect rect) {
+        array[offset] = rect.left;
+        array[offset + 1] = rect.top;
+        array[offset + 2] = rect.right;
+        array[offset + 3] = rect.top;
+        array[offset + 4] = rect.right;
+        array[offset + 5] = rect.bottom;
+        array[offset + 6] = rect.left;
+        array[offset + 7] = rect.bottom;
+    }
+
+    /**
+     * Read a rect back from the corners in a vertex array.
+     *
+     * @param array  Vertex array to read from.
+     * @param offset Index of the first corner.
+     * @param rect   Rect to set.
+     */
+    private static void getQuad(float[] array, int offset, Rect rect) {
+        rect.set((int) array[offset], (int) array[offset + 1], (int) array[offset + 4], (int) array[offset + 5]);
+    }
+
+    /**
+     * Get the number of columns needed to fill the width with text, including a partial column.
+     *
+     * @param width    Width of the drawing area.
+     * @param textSize Size of the rain text.
+     * @return Column count.
+     */
+    public static int getColumnCount(int width, float textSize) {
+        return (int) (width / textSize) + 1;
+    }
 }
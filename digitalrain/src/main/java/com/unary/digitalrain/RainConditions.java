@@ -0,0 +1,248 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.PowerManager;
+import android.provider.Settings;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * Watches the conditions a {@link RainThrottle} applies to for a view: whether any of it is on
+ * screen, power save mode, the thermal status and the animator duration scale. The listener is
+ * called on the UI thread when one of them changes.
+ */
+class RainConditions implements ViewTreeObserver.OnScrollChangedListener,
+        ViewTreeObserver.OnGlobalLayoutListener {
+
+    private final View mView;
+    private final Runnable mListener;
+    private final Rect mVisibleRect = new Rect();
+    private PowerManager mPowerManager;
+    private BroadcastReceiver mPowerSaveReceiver;
+    private PowerManager.OnThermalStatusChangedListener mThermalListener;
+    private ViewTreeObserver mViewTreeObserver;
+    private boolean mStarted;
+    private boolean mClipped;
+    private boolean mPowerSaveMode;
+    private int mThermalStatus;
+    private float mAnimatorScale = 1;
+
+    /**
+     * Constructor for the conditions of a view.
+     *
+     * @param view     View to watch.
+     * @param listener Called when the conditions change.
+     */
+    RainConditions(View view, Runnable listener) {
+        mView = view;
+        mListener = listener;
+    }
+
+    /**
+     * Start watching the conditions, usually once the view is attached.
+     */
+    void start() {
+        if (mStarted) return;
+
+        mStarted = true;
+
+        Context context = mView.getContext().getApplicationContext();
+        mPowerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+
+        mViewTreeObserver = mView.getViewTreeObserver();
+        mViewTreeObserver.addOnScrollChangedListener(this);
+        mViewTreeObserver.addOnGlobalLayoutListener(this);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && mPowerManager != null) {
+            mPowerSaveReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    update();
+                }
+            };
+
+            context.registerReceiver(mPowerSaveReceiver, new IntentFilter(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED));
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && mPowerManager != null) {
+            mThermalListener = new PowerManager.OnThermalStatusChangedListener() {
+                @Override
+                public void onThermalStatusChanged(int status) {
+                    update();
+                }
+            };
+
+            mPowerManager.addThermalStatusListener(mThermalListener);
+        }
+
+        refresh();
+    }
+
+    /**
+     * Stop watching the conditions, usually once the view is detached.
+     */
+    void stop() {
+        if (!mStarted) return;
+
+        mStarted = false;
+
+        // Observer may have been replaced since
+        if (mViewTreeObserver.isAlive()) {
+            mViewTreeObserver.removeOnScrollChangedListener(this);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                mViewTreeObserver.removeOnGlobalLayoutListener(this);
+            } else {
+                mViewTreeObserver.removeGlobalOnLayoutListener(this);
+            }
+        }
+
+        if (mPowerSaveReceiver != null) {
+            mView.getContext().getApplicationContext().unregisterReceiver(mPowerSaveReceiver);
+            mPowerSaveReceiver = null;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && mThermalListener != null) {
+            mPowerManager.removeThermalStatusListener(mThermalListener);
+            mThermalListener = null;
+        }
+
+        mViewTreeObserver = null;
+    }
+
+    /**
+     * Read the conditions again without calling the listener. The animator duration scale has
+     * no notification, so this is done when the window is shown.
+     *
+     * @return True if any have changed.
+     */
+    boolean refresh() {
+        float animatorScale = 1;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            animatorScale = Settings.Global.getFloat(mView.getContext().getContentResolver(),
+                    Settings.Global.ANIMATOR_DURATION_SCALE, 1);
+        }
+
+        return read(animatorScale);
+    }
+
+    /**
+     * Read the conditions that have notifications. The animator duration scale is passed in
+     * rather than read from the settings.
+     *
+     * @param animatorScale Animator duration scale.
+     * @return True if any have changed.
+     */
+    private boolean read(float animatorScale) {
+        boolean clipped = !mView.getGlobalVisibleRect(mVisibleRect);
+        boolean powerSaveMode = false;
+        int thermalStatus = PowerManager.THERMAL_STATUS_NONE;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && mPowerManager != null) {
+            powerSaveMode = mPowerManager.isPowerSaveMode();
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && mPowerManager != null) {
+            thermalStatus = mPowerManager.getCurrentThermalStatus();
+        }
+
+        boolean changed = clipped != mClipped || powerSaveMode != mPowerSaveMode
+                || thermalStatus != mThermalStatus || animatorScale != mAnimatorScale;
+
+        mClipped = clipped;
+        mPowerSaveMode = powerSaveMode;
+        mThermalStatus = thermalStatus;
+        mAnimatorScale = animatorScale;
+
+        return changed;
+    }
+
+    /**
+     * Check if none of the view is on screen.
+     *
+     * @return True if clipped.
+     */
+    boolean isClipped() {
+        return mClipped;
+    }
+
+    /**
+     * Check if battery saver is on.
+     *
+     * @return True in power save mode.
+     */
+    boolean isPowerSaveMode() {
+        return mPowerSaveMode;
+    }
+
+    /**
+     * Get the thermal status of the device. It is always none before Q.
+     *
+     * @return Status from {@link PowerManager}.
+     */
+    int getThermalStatus() {
+        return mThermalStatus;
+    }
+
+    /**
+     * Get the animator duration scale. A scale of 0 means animations are off.
+     *
+     * @return Duration scale.
+     */
+    float getAnimatorScale() {
+        return mAnimatorScale;
+    }
+
+    @Override
+    public void onScrollChanged() {
+        updateClipped();
+    }
+
+    @Override
+    public void onGlobalLayout() {
+        updateClipped();
+    }
+
+    /**
+     * Check again if the view is on screen. Scrolling calls this for every frame, so nothing else
+     * is read.
+     */
+    private void updateClipped() {
+        boolean clipped = !mView.getGlobalVisibleRect(mVisibleRect);
+
+        if (mStarted && clipped != mClipped) {
+            mClipped = clipped;
+            mListener.run();
+        }
+    }
+
+    /**
+     * Read the conditions again, and call the listener if any have changed.
+     */
+    private void update() {
+        if (mStarted && read(mAnimatorScale)) {
+            mListener.run();
+        }
+    }
+}
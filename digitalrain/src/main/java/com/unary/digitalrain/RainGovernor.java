@@ -0,0 +1,130 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+/**
+ * Finds the quality level for the rain from the time taken to render each frame. It steps down
+ * quickly when over budget and back up slowly when there is headroom, with a gap between the two
+ * so that it settles on a level.
+ */
+class RainGovernor {
+
+    private static final float SMOOTHING = 0.1f;
+    private static final float DOWN_RATIO = 0.8f;
+    private static final float UP_RATIO = 0.4f;
+    private static final int DOWN_FRAMES = 10;
+    private static final int UP_FRAMES = 120;
+    private static final int MAX_UP_FRAMES = 1920;
+    private static final int SETTLE_FRAMES = 30;
+
+    private int mMaxLevel;
+    private int mLevel;
+    private float mAverage;
+    private int mOverFrames;
+    private int mUnderFrames;
+    private int mUpFrames = UP_FRAMES;
+    private int mSettleFrames;
+    private boolean mSteppedUp;
+
+    /**
+     * Get the current quality level.
+     *
+     * @return Level from 0 for full quality.
+     */
+    int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * Set the lowest quality level available.
+     *
+     * @param maxLevel Highest level number.
+     */
+    void setMaxLevel(int maxLevel) {
+        mMaxLevel = Math.max(maxLevel, 0);
+        mLevel = Math.min(mLevel, mMaxLevel);
+    }
+
+    /**
+     * Go back to full quality and forget the frame times.
+     */
+    void reset() {
+        mLevel = 0;
+        mUpFrames = UP_FRAMES;
+        mSteppedUp = false;
+        settle();
+    }
+
+    /**
+     * Add the render time of a frame. The average is compared with the budget, and the level is
+     * changed once it has been over or under for long enough.
+     *
+     * @param renderTime Time taken to render the frame.
+     * @param budget     Time available for each frame, in the same units.
+     * @return True if the level has changed.
+     */
+    boolean update(long renderTime, long budget) {
+        if (budget <= 0) return false;
+
+        // Frames right after a change are not typical
+        if (mSettleFrames > 0) {
+            mSettleFrames--;
+            return false;
+        }
+
+        mAverage = mAverage == 0 ? renderTime : mAverage + (renderTime - mAverage) * SMOOTHING;
+
+        if (mAverage > budget * DOWN_RATIO) {
+            mUnderFrames = 0;
+
+            if (++mOverFrames >= DOWN_FRAMES && mLevel < mMaxLevel) {
+                // Wait longer before trying a level that failed
+                if (mSteppedUp) {
+                    mUpFrames = Math.min(mUpFrames * 2, MAX_UP_FRAMES);
+                }
+
+                mSteppedUp = false;
+                mLevel++;
+                settle();
+                return true;
+            }
+        } else if (mAverage < budget * UP_RATIO) {
+            mOverFrames = 0;
+
+            if (++mUnderFrames >= mUpFrames && mLevel > 0) {
+                mSteppedUp = true;
+                mLevel--;
+                settle();
+                return true;
+            }
+        } else {
+            mOverFrames = 0;
+            mUnderFrames = 0;
+        }
+
+        return false;
+    }
+
+    /**
+     * Start measuring again after a change.
+     */
+    private void settle() {
+        mAverage = 0;
+        mOverFrames = 0;
+        mUnderFrames = 0;
+        mSettleFrames = SETTLE_FRAMES;
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import com.unary.digitalrain.core.GlyphRenderer;
+import com.unary.digitalrain.core.RainRandom;
+import com.unary.digitalrain.core.RainSimulation;
+
+import java.util.Arrays;
+
+/**
+ * Creates the same rain shower as {@link Rain}, but keeps it as a grid of characters and their
+ * ages instead of accumulating it on the canvas. Each frame draws only the cells that are still
+ * visible, with an alpha found from their age, onto a cleared canvas.
+ *
+ * <p>Each column follows the rows its drop has reached within the fade, and the range of rows left
+ * behind by earlier drops until those have faded. Only those cells are aged and drawn, so the cost
+ * follows the visible trails rather than the size of the grid. Clearing the canvas and uploading it
+ * to the display still cost as much as the whole bitmap.</p>
+ */
+public class RainGrid implements RainLayer, GlyphRenderer {
+
+    private static final int MAX_AGE = 1024;
+
+    private Canvas mCanvas;
+    private Paint mPaint;
+    private GlyphAtlas mGlyphAtlas;
+    private RainSimulation mSimulation;
+    private Rect mSrcRect;
+    private Rect mDstRect;
+    private int mStart;
+    private int mRows;
+    private short[] mGlyphs;
+    private short[] mAges;
+    private int[] mHeads;
+    private int[] mTailStarts;
+    private int[] mTailEnds;
+    private int[] mAlphas;
+    private int mPaintAlpha;
+    private float mRainAlpha;
+
+    /**
+     * Constructor to initialize the rain for a range of columns, with a few visible drops placed
+     * within the field.
+     *
+     * @param canvas     Drawing canvas to use.
+     * @param paint      Paint to draw with.
+     * @param glyphAtlas Characters rendered with the paint.
+     * @param start      First column to draw.
+     * @param end        Column after the last to draw.
+     * @param rainAlpha  How quickly the character trails fade.
+     */
+    public RainGrid(Canvas canvas, Paint paint, GlyphAtlas glyphAtlas, int start, int end, float rainAlpha) {
+        this(canvas, paint, glyphAtlas, start, end, rainAlpha, new RainRandom(), false);
+    }
+
+    /**
+     * Constructor to initialize the rain for a range of columns with its own random numbers, and
+     * optionally drops that each fall at their own speed and end after a length of their own. A
+     * seeded generator gives the same rain every time.
+     *
+     * @param canvas     Drawing canvas to use.
+     * @param paint      Paint to draw with.
+     * @param glyphAtlas Characters rendered with the paint.
+     * @param start      First column to draw.
+     * @param end        Column after the last to draw.
+     * @param rainAlpha  How quickly the character trails fade.
+     * @param random     Random numbers for the drops and characters.
+     * @param varied     True for drops of different speeds and lengths.
+     */
+    RainGrid(Canvas canvas, Paint paint, GlyphAtlas glyphAtlas, int start, int end, float rainAlpha,
+             RainRandom random, boolean varied) {
+        mCanvas = canvas;
+        mGlyphAtlas = glyphAtlas;
+        mSrcRect = new Rect();
+        mDstRect = new Rect();
+        mStart = start;
+
+        // Any blur is already in the atlas
+        mPaint = new Paint(paint);
+        mPaint.setMaskFilter(null);
+        mPaintAlpha = mPaint.getAlpha();
+
+        float textSize = mPaint.getTextSize();
+        int columns = Math.max(end - start, 0);
+
+        // Last row has its baseline past the bottom
+        mRows = (int) (canvas.getHeight() / textSize) + 2;
+        mGlyphs = new short[columns * mRows];
+        mAges = new short[columns * mRows];
+        mHeads = new int[columns];
+        mTailStarts = new int[columns];
+        mTailEnds = new int[columns];
+
+        mSimulation = new RainSimulation(columns, canvas.getHeight(), textSize,
+                glyphAtlas.getGlyphCount(), random, varied);
+
+        // Nothing visible yet
+        setRainAlpha(rainAlpha);
+        Arrays.fill(mAges, (short) mAlphas.length);
+        Arrays.fill(mHeads, -1);
+    }
+
+    /**
+     * Set the opacity used for the trailing text effect. The alpha for each age is found here, so
+     * nothing is computed per cell.
+     *
+     * @param rainAlpha How quickly the character trails fade.
+     */
+    public void setRainAlpha(float rainAlpha) {
+        if (mAlphas != null && rainAlpha == mRainAlpha) return;
+
+        float fade = 1 - Math.min(Math.max(rainAlpha, 0), 1);
+        float alpha = mPaintAlpha;
+        int ages = 0;
+
+        // Count the ages until nothing is visible
+        while (ages < MAX_AGE && Math.round(alpha) > 0) {
+            alpha *= fade;
+            ages++;
+        }
+
+        int[] alphas = new int[ages];
+        alpha = mPaintAlpha;
+
+        for (int i = 0; i < ages; i++) {
+            alphas[i] = Math.round(alpha);
+            alpha *= fade;
+        }
+
+        // Keep faded cells from showing again
+        if (mAlphas != null) {
+            for (int i = 0; i < mAges.length; i++) {
+                if (mAges[i] >= mAlphas.length) {
+                    mAges[i] = (short) ages;
+                }
+            }
+        }
+
+        mAlphas = alphas;
+        mRainAlpha = rainAlpha;
+    }
+
+    /**
+     * Update the grid with random ASCII characters placed below the last, then draw the visible
+     * cells. Nothing is allocated here, as it runs for every frame.
+     */
+    @Override
+    public void draw() {
+        tick();
+        drawColumns(mCanvas, 0, mSimulation.getColumnCount());
+    }
+
+    @Override
+    public void tick() {
+        int maxAge = mAlphas.length;
+
+        // Older characters fade
+        for (int i = 0; i < mHeads.length; i++) {
+            int offset = i * mRows;
+            int head = mHeads[i];
+            int start = Math.max(head - maxAge + 1, 0);
+
+            ageCells(offset, start, head + 1, maxAge);
+
+            if (mTailStarts[i] == mTailEnds[i]) continue;
+
+            // The trails left behind, around the rows already done
+            boolean visible = ageCells(offset, mTailStarts[i], Math.min(mTailEnds[i], start), maxAge);
+            visible |= ageCells(offset, Math.max(mTailStarts[i], head + 1), mTailEnds[i], maxAge);
+
+            // Rows the drop has come back over may still be visible once it moves on
+            if (!visible && (mTailEnds[i] <= start || mTailStarts[i] > head)) {
+                mTailStarts[i] = mTailEnds[i] = 0;
+            }
+        }
+
+        mSimulation.tick(this);
+    }
+
+    @Override
+    public void drawColumns(Canvas canvas, int start, int end) {
+        int maxAge = mAlphas.length;
+        int alpha = -1;
+
+        for (int i = start; i < end; i++) {
+            int head = mHeads[i];
+            int first = Math.max(head - maxAge + 1, 0);
+
+            alpha = drawCells(canvas, i, first, head + 1, alpha);
+
+            if (mTailStarts[i] == mTailEnds[i]) continue;
+
+            alpha = drawCells(canvas, i, mTailStarts[i], Math.min(mTailEnds[i], first), alpha);
+            alpha = drawCells(canvas, i, Math.max(mTailStarts[i], head + 1), mTailEnds[i], alpha);
+        }
+    }
+
+    /**
+     * Age the visible cells in a range of rows.
+     *
+     * @param offset Index of the first cell in the column.
+     * @param start  First row to age.
+     * @param end    Row after the last to age.
+     * @param maxAge Age at which a cell is no longer visible.
+     * @return True if any of the cells are still visible.
+     */
+    private boolean ageCells(int offset, int start, int end, int maxAge) {
+        boolean visible = false;
+
+        for (int i = offset + start; i < offset + end; i++) {
+            if (mAges[i] < maxAge) {
+                visible |= ++mAges[i] < maxAge;
+            }
+        }
+
+        return visible;
+    }
+
+    /**
+     * Draw the visible cells in a range of rows of a column.
+     *
+     * @param canvas Drawing canvas to use.
+     * @param column Column of the cells.
+     * @param start  First row to draw.
+     * @param end    Row after the last to draw.
+     * @param alpha  Alpha the paint already has, or -1 if unknown.
+     * @return Alpha the paint has afterwards.
+     */
+    private int drawCells(Canvas canvas, int column, int start, int end, int alpha) {
+        float textSize = mPaint.getTextSize();
+        int maxAge = mAlphas.length;
+        int offset = column * mRows;
+        Bitmap bitmap = mGlyphAtlas.getBitmap();
+
+        for (int row = start; row < end; row++) {
+            int age = mAges[offset + row];
+
+            if (age >= maxAge) continue;
+
+            // Avoid setting the same alpha again
+            if (mAlphas[age] != alpha) {
+                alpha = mAlphas[age];
+                mPaint.setAlpha(alpha);
+            }
+
+            mGlyphAtlas.getGlyphRects(mGlyphs[offset + row], (mStart + column) * textSize, row * textSize, mSrcRect, mDstRect);
+            canvas.drawBitmap(bitmap, mSrcRect, mDstRect, mPaint);
+        }
+
+        return alpha;
+    }
+
+    @Override
+    public RainSimulation getSimulation() {
+        return mSimulation;
+    }
+
+    @Override
+    public void drawGlyph(int glyph, int column, int row) {
+        if (row >= mRows) return;
+
+        int head = mHeads[column];
+
+        if (row != head + 1) {
+            // A new drop, or one moved, leaving the rows done so far to fade with any older trail
+            int start = Math.max(head - mAlphas.length + 1, 0);
+            int end = head + 1;
+
+            if (mTailStarts[column] != mTailEnds[column]) {
+                start = Math.min(start, mTailStarts[column]);
+                end = Math.max(end, mTailEnds[column]);
+            }
+
+            mTailStarts[column] = start;
+            mTailEnds[column] = Math.max(end, start);
+        }
+
+        mHeads[column] = row;
+        mGlyphs[column * mRows + row] = (short) glyph;
+        mAges[column * mRows + row] = 0;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+import android.graphics.Canvas;
+
+import com.unary.digitalrain.core.RainSimulation;
+
+/**
+ * A layer of rain that is updated and drawn to its canvas once for each frame.
+ */
+public interface RainLayer {
+
+    /**
+     * Update the rain and draw it to the canvas.
+     */
+    void draw();
+
+    /**
+     * Update the rain without drawing it, so that it can be drawn in parts with
+     * {@link #drawColumns}.
+     */
+    void tick();
+
+    /**
+     * Draw the characters of the last update for a range of columns, in the same order as
+     * {@link #draw()}.
+     *
+     * @param canvas Drawing canvas to use.
+     * @param start  First column to draw, counted from the first column of the layer.
+     * @param end    Column after the last to draw.
+     */
+    void drawColumns(Canvas canvas, int start, int end);
+
+    /**
+     * Get the drops of the rain, for saving and restoring their positions.
+     *
+     * @return Simulation of the drops.
+     */
+    RainSimulation getSimulation();
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.IOException;
+
+/**
+ * Renders the rain offscreen, without a view or window, and streams each frame to an encoder as it
+ * goes. Only one frame is held at a time, so the memory used is the same for a clip of any length.
+ * The rain starts from a seed, so the same settings record the same frames every time.
+ *
+ * <p>Recording runs on the calling thread, which should not be the UI thread. The rain settings
+ * are available from {@link #getRainRenderer()}.</p>
+ */
+public class RainRecorder {
+
+    /**
+     * Interface definition for an encoder of the recorded frames.
+     */
+    public interface FrameEncoder {
+
+        /**
+         * Called before the first frame.
+         *
+         * @param width      Width of the frames.
+         * @param height     Height of the frames.
+         * @param frameDelay Time each frame is shown, in milliseconds.
+         * @throws IOException If the encoder could not start.
+         */
+        void start(int width, int height, int frameDelay) throws IOException;
+
+        /**
+         * Called with each frame in turn. The bitmap is reused for the next frame, so it must not
+         * be kept.
+         *
+         * @param frame Opaque bitmap of the frame.
+         * @throws IOException If the frame could not be encoded.
+         */
+        void encode(@NonNull Bitmap frame) throws IOException;
+
+        /**
+         * Called after the last frame.
+         *
+         * @throws IOException If the encoder could not finish.
+         */
+        void finish() throws IOException;
+    }
+
+    private static final int FRAME_DELAY = 100; // ms
+    private static final int WARM_UP_FRAMES = 0;
+    private static final int BACKGROUND_COLOR = Color.BLACK;
+
+    private final RainRenderer mRainRenderer;
+    private long mSeed;
+    private int mFrameDelay;
+    private int mWarmUpFrames;
+    private int mBackgroundColor;
+
+    /**
+     * Constructor with the default settings.
+     *
+     * @param textPaint Paint for the text rain.
+     */
+    public RainRecorder(@NonNull Paint textPaint) {
+        mRainRenderer = new RainRenderer(textPaint);
+        mFrameDelay = FRAME_DELAY;
+        mWarmUpFrames = WARM_UP_FRAMES;
+        mBackgroundColor = BACKGROUND_COLOR;
+
+        // Every frame at full quality
+        mRainRenderer.setRainAdaptive(false);
+    }
+
+    /**
+     * Record the rain at the given size and stream the frames to the encoder. The rain starts
+     * again from the seed, and any warm-up frames are rendered but not encoded.
+     *
+     * @param width      Width of the frames.
+     * @param height     Height of the frames.
+     * @param frameCount Number of frames to encode.
+     * @param encoder    Encoder for the frames.
+     * @throws IOException If the encoder fails.
+     */
+    @WorkerThread
+    public void record(int width, int height, int frameCount, @NonNull FrameEncoder encoder) throws IOException {
+        width = Math.max(width, 1);
+        height = Math.max(height, 1);
+
+        Bitmap frame = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(frame);
+
+        mRainRenderer.setSeed(mSeed);
+        mRainRenderer.layout(width, height);
+
+        try {
+            // Fill the screen with trails first
+            for (int i = 0; i < mWarmUpFrames; i++) {
+                mRainRenderer.render();
+            }
+
+            encoder.start(width, height, mFrameDelay);
+
+            for (int i = 0; i < frameCount; i++) {
+                mRainRenderer.render();
+
+                canvas.drawColor(mBackgroundColor, PorterDuff.Mode.SRC);
+                mRainRenderer.draw(canvas, 0, 0);
+
+                encoder.encode(frame);
+            }
+
+            encoder.finish();
+        } finally {
+            // Nothing is held between recordings
+            mRainRenderer.releaseBuffers();
+            frame.recycle();
+        }
+    }
+
+    /**
+     * Get the renderer for the rain. Its settings take effect with the next recording.
+     *
+     * @return Renderer for the rain.
+     */
+    @NonNull
+    public RainRenderer getRainRenderer() {
+        return mRainRenderer;
+    }
+
+    /**
+     * Get the seed the rain starts from.
+     *
+     * @return Seed for the random numbers.
+     */
+    public long getSeed() {
+        return mSeed;
+    }
+
+    /**
+     * Set the seed the rain starts from. The same seed, size and settings record the same frames.
+     *
+     * @param seed Seed for the random numbers.
+     */
+    public void setSeed(long seed) {
+        mSeed = seed;
+    }
+
+    /**
+     * Get the time each frame is shown for.
+     *
+     * @return Time interval in milliseconds.
+     */
+    public int getFrameDelay() {
+        return mFrameDelay;
+    }
+
+    /**
+     * Set the time each frame is shown for. This is usually the rain speed.
+     *
+     * @param frameDelay Time interval in milliseconds.
+     */
+    public void setFrameDelay(int frameDelay) {
+        mFrameDelay = Math.max(frameDelay, 0);
+    }
+
+    /**
+     * Get the number of frames rendered before the first one encoded.
+     *
+     * @return Warm-up frame count.
+     */
+    public int getWarmUpFrames() {
+        return mWarmUpFrames;
+    }
+
+    /**
+     * Set the number of frames rendered before the first one encoded, so the clip can start with
+     * the trails already on screen.
+     *
+     * @param warmUpFrames Warm-up frame count.
+     */
+    public void setWarmUpFrames(int warmUpFrames) {
+        mWarmUpFrames = Math.max(warmUpFrames, 0);
+    }
+
+    /**
+     * Get the color behind the rain.
+     *
+     * @return Background color.
+     */
+    @ColorInt
+    public int getBackgroundColor() {
+        return mBackgroundColor;
+    }
+
+    /**
+     * Set the color behind the rain. Any alpha is ignored, as the frames are opaque.
+     *
+     * @param backgroundColor Background color.
+     */
+    public void setBackgroundColor(@ColorInt int backgroundColor) {
+        mBackgroundColor = backgroundColor | 0xFF000000;
+    }
+}
@@ -0,0 +1,1672 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.graphics.RenderNode;
+import android.os.Build;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import com.unary.digitalrain.core.RainAlphabet;
+import com.unary.digitalrain.core.RainRandom;
+import com.unary.digitalrain.core.RainSimulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Draws the rain layers into double-buffered bitmaps, away from whatever displays them. Frames are
+ * rendered on one thread and can be drawn from another, which only ever sees a completed frame.
+ * It is shared by the rain views and takes the same settings.
+ */
+public class RainRenderer {
+
+    /**
+     * Interface definition for a callback when the quality level of the rain changes.
+     */
+    public interface OnQualityChangedListener {
+
+        /**
+         * Called when frames have been over or under budget long enough to change the quality.
+         *
+         * @param qualityLevel The new quality level, 0 for full quality.
+         */
+        void onQualityChanged(int qualityLevel);
+    }
+
+    private static final float RAIN_ALPHA = 24f / 255;
+    private static final int RAIN_ALPHABET = 1; // latin1
+    private static final RainAlphabet[] ALPHABETS = {
+            RainAlphabet.ASCII, RainAlphabet.LATIN_1, RainAlphabet.KATAKANA, RainAlphabet.DIGITS
+    };
+    private static final float RAIN_DEPTH = 0;
+    private static final int RAIN_DEPTH_MODE = DigitalRain.DEPTH_MODE_BLUR;
+    private static final int RAIN_ENGINE = DigitalRain.ENGINE_CANVAS;
+    private static final int RAIN_INTENSITY = 3;
+    private static final int RAIN_THREADS = 1;
+    private static final boolean RAIN_VARIED = false;
+    private static final float DEPTH_SCALE = 0.5f;
+    private static final float MIN_DEPTH_SCALE = 1f / 8;
+    private static final float RAIN_RENDER_SCALE = 1;
+    private static final float MIN_RENDER_SCALE = 0.1f;
+    private static final int MIN_PARALLEL_CORES = 4;
+    private static final boolean RAIN_ADAPTIVE = true;
+    private static final int DENSITY_LEVELS = 2;
+    private static final float DENSITY_STEP = 0.25f;
+    private static final int MAX_HISTORY = 64;
+
+    private float mRainAlpha;
+    private RainAlphabet mRainAlphabet;
+    private float mRainDepth;
+    private int mRainDepthMode;
+    private int mRainEngine;
+    private int mRainIntensity;
+    private int mIntensityLimit = Integer.MAX_VALUE;
+    private float mRainRenderScale;
+    private int mRainThreads;
+    private boolean mRainVaried;
+    private Paint mTextPaint;
+    private int mWidth;
+    private int mHeight;
+    private volatile boolean mLayoutRequested;
+    private volatile long mRequestedSize;
+    private boolean mRainAdaptive;
+    private volatile long mFrameBudget;
+    private volatile boolean mQualityReset;
+    private RainGovernor mRainGovernor;
+    private OnQualityChangedListener mOnQualityChangedListener;
+    private volatile boolean mFrameStatsEnabled;
+    private volatile long mFrameCount;
+    private volatile long mRenderTime;
+    private volatile long mFadeTime;
+    private volatile long mPublishTime;
+    private volatile float[][] mPendingDrops;
+    private volatile long mAllocatedBytes;
+    private boolean mHardwareAccelerated;
+    private RainRandom mSeedRandom;
+    private NodeHistory mNodeHistory;
+    private RainWorkers mSharedWorkers;
+    private GlyphAtlasCache mAtlasCache;
+    private GlyphAtlas[] mGlyphAtlases;
+    private RainWorkers mRainWorkers;
+    private volatile RainStrip[] mRainStrips;
+    private volatile DepthLayer[] mDepthLayers;
+    private Bitmap mFrontBitmap;
+    private Bitmap mBackBitmap;
+    private Paint mFadePaint;
+    private int mFadeColor;
+    private int mSteps;
+    private int mStep;
+    private Paint mFilterPaint;
+    private Paint mBitmapPaint;
+    private Bitmap.Config mConfig;
+    private int mDrawWidth;
+    private int mDrawHeight;
+    private Rect mDstRect;
+    private final Object mRenderLock = new Object();
+    private final Object mBufferLock = new Object();
+
+    /**
+     * Constructor with the default settings.
+     *
+     * @param textPaint Paint for the text rain.
+     */
+    public RainRenderer(@NonNull Paint textPaint) {
+        mRainAlpha = RAIN_ALPHA;
+        mRainAlphabet = ALPHABETS[RAIN_ALPHABET];
+        mRainDepth = RAIN_DEPTH;
+        mRainDepthMode = RAIN_DEPTH_MODE;
+        mRainEngine = RAIN_ENGINE;
+        mRainIntensity = RAIN_INTENSITY;
+        mRainRenderScale = RAIN_RENDER_SCALE;
+        mRainThreads = RAIN_THREADS;
+        mRainVaried = RAIN_VARIED;
+        mTextPaint = textPaint;
+        mRainAdaptive = RAIN_ADAPTIVE;
+        mRainGovernor = new RainGovernor();
+
+        mFadePaint = new Paint();
+        mFadePaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+
+        mFilterPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        mBitmapPaint = new Paint();
+        mConfig = Bitmap.Config.ARGB_8888;
+        mDstRect = new Rect();
+        mGlyphAtlases = new GlyphAtlas[0];
+    }
+
+    /**
+     * Read the settings from the {@link R.styleable#DigitalRain DigitalRain Attributes}. Input values
+     * are checked for sanity.
+     *
+     * @param typedArray Attributes obtained for the view.
+     */
+    public void setAttributes(@NonNull TypedArray typedArray) {
+        mRainAdaptive = typedArray.getBoolean(R.styleable.DigitalRain_rainAdaptive, RAIN_ADAPTIVE);
+        mRainAlpha = typedArray.getFloat(R.styleable.DigitalRain_rainAlpha, RAIN_ALPHA);
+        mRainAlphabet = getAlphabet(typedArray.getInt(R.styleable.DigitalRain_rainAlphabet, RAIN_ALPHABET));
+        mRainDepth = typedArray.getFloat(R.styleable.DigitalRain_rainDepth, RAIN_DEPTH);
+        mRainDepthMode = typedArray.getInt(R.styleable.DigitalRain_rainDepthMode, RAIN_DEPTH_MODE);
+        mRainEngine = typedArray.getInt(R.styleable.DigitalRain_rainEngine, RAIN_ENGINE);
+        mRainIntensity = Math.max(typedArray.getInt(R.styleable.DigitalRain_rainIntensity, RAIN_INTENSITY), 0);
+        mRainRenderScale = clampRenderScale(typedArray.getFloat(R.styleable.DigitalRain_rainRenderScale, RAIN_RENDER_SCALE));
+        mRainThreads = Math.max(typedArray.getInt(R.styleable.DigitalRain_rainThreads, RAIN_THREADS), 1);
+        mRainVaried = typedArray.getBoolean(R.styleable.DigitalRain_rainVaried, RAIN_VARIED);
+    }
+
+    /**
+     * Create the buffers and layers for the given size. Nothing is done if the size and settings
+     * are the same, and the buffers are kept or reused where they fit. Characters are only
+     * rendered again when the text or depth has changed. This waits for any frame in progress.
+     *
+     * @param width  Width of the rain.
+     * @param height Height of the rain.
+     */
+    public void layout(int width, int height) {
+        setSize(width, height);
+        prewarm();
+    }
+
+    /**
+     * Set the size of the rain without creating anything. The buffers and layers are created by
+     * {@link #prewarm()} or the next frame, on the thread that runs them, so this is cheap enough
+     * for the UI thread.
+     *
+     * @param width  Width of the rain.
+     * @param height Height of the rain.
+     */
+    public void setSize(int width, int height) {
+        if (width < 1 || height < 1) return;
+
+        mRequestedSize = (long) width << 32 | height;
+    }
+
+    /**
+     * Create the buffers and layers for the last size set, unless they are ready. This can run on
+     * any thread ahead of the first frame, and waits for any frame in progress.
+     */
+    public void prewarm() {
+        long size = mRequestedSize;
+        int width = (int) (size >>> 32);
+        int height = (int) size;
+
+        if (width < 1 || height < 1) return;
+
+        synchronized (mRenderLock) {
+            // Keep the rain falling where it is
+            if (width == mWidth && height == mHeight && !mLayoutRequested && mRainStrips != null) return;
+
+            mWidth = width;
+            mHeight = height;
+            mLayoutRequested = false;
+
+            // Drops carry on through changes to the text
+            if (mRainStrips != null && mPendingDrops == null) {
+                mPendingDrops = getColumnDrops();
+            }
+
+            // Rendered smaller with the same columns, then scaled up when drawn
+            float renderScale = mRainRenderScale;
+            int renderWidth = Math.max(Math.round(width * renderScale), 1);
+            int renderHeight = Math.max(Math.round(height * renderScale), 1);
+
+            // A single color only needs the alpha, tinted when drawn
+            Bitmap.Config config = isMaskPaint(mTextPaint) ? Bitmap.Config.ALPHA_8 : Bitmap.Config.ARGB_8888;
+
+            int rainIntensity = Math.min(mRainIntensity, mIntensityLimit);
+
+            // Step down the depth, then the layers, then the column density
+            mRainGovernor.setMaxLevel((mRainDepth > 0 ? 1 : 0) + Math.max(rainIntensity - 1, 0) + DENSITY_LEVELS);
+
+            int level = mRainAdaptive ? mRainGovernor.getLevel() : 0;
+            float rainDepth = mRainDepth;
+            Paint textPaint = mTextPaint;
+
+            if (level > 0 && rainDepth > 0) {
+                rainDepth = 0;
+                level--;
+            }
+
+            if (level > 0 && rainIntensity > 1) {
+                int dropped = Math.min(level, rainIntensity - 1);
+                rainIntensity -= dropped;
+                level -= dropped;
+            }
+
+            float textScale = renderScale * (1 + level * DENSITY_STEP);
+
+            if (textScale != 1) {
+                textPaint = new Paint(mTextPaint);
+                textPaint.setTextSize(mTextPaint.getTextSize() * textScale);
+            }
+
+            if (mGlyphAtlases.length != rainIntensity) {
+                mGlyphAtlases = Arrays.copyOf(mGlyphAtlases, rainIntensity);
+            }
+
+            float textSize = textPaint.getTextSize();
+
+            // Far layers get their own smaller buffers
+            boolean downsample = mRainDepthMode == DigitalRain.DEPTH_MODE_DOWNSAMPLE && rainDepth > 0;
+            int layers = downsample ? Math.min(rainIntensity, 1) : rainIntensity;
+            boolean grid = mRainEngine == DigitalRain.ENGINE_GRID;
+
+            DepthLayer[] depthLayers = new DepthLayer[rainIntensity - layers];
+
+            for (int i = 0; i < rainIntensity; i++) {
+                Paint paint = textPaint;
+                float radius = rainDepth > 0 && !downsample ? i * rainDepth * renderScale + 0.001f : 0;
+                float scale = 1;
+
+                if (i >= layers) {
+                    scale = Math.max(1 / (1 + i * rainDepth * DEPTH_SCALE), MIN_DEPTH_SCALE);
+
+                    paint = new Paint(textPaint);
+                    paint.setTextSize(textSize * scale);
+                }
+
+                // Only render the characters again when needed
+                if (mGlyphAtlases[i] == null || !mGlyphAtlases[i].matches(paint, radius, mRainAlphabet)) {
+                    mGlyphAtlases[i] = mAtlasCache != null ? mAtlasCache.obtain(paint, radius, mRainAlphabet)
+                            : new GlyphAtlas(paint, radius, mRainAlphabet);
+                }
+
+                if (i >= layers) {
+                    depthLayers[i - layers] = new DepthLayer(renderWidth, renderHeight, config, paint, mGlyphAtlases[i], scale, grid);
+                }
+            }
+
+            // The display can fade the rain itself, from a history of recorded frames
+            NodeHistory nodeHistory = null;
+            Canvas canvas = null;
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && mHardwareAccelerated
+                    && mRainEngine == DigitalRain.ENGINE_HISTORY && depthLayers.length == 0
+                    && isHistoryFaded(mRainAlpha)) {
+                nodeHistory = mNodeHistory != null && mNodeHistory.matches(renderWidth, renderHeight)
+                        ? mNodeHistory : new NodeHistory(renderWidth, renderHeight);
+                canvas = nodeHistory.beginRecording();
+            }
+
+            mBackBitmap = nodeHistory != null ? null : obtainBitmap(mBackBitmap, renderWidth, renderHeight, config, true);
+
+            // Split the columns into strips of equal width. Recording is quick, so it has only one.
+            int columns = Rain.getColumnCount(renderWidth, textSize);
+            int parallelThreads = mSharedWorkers != null
+                    ? Math.min(getParallelThreads(), mSharedWorkers.getTaskCount()) : getParallelThreads();
+            int overhang = 0;
+
+            for (int i = 0; i < layers; i++) {
+                overhang = Math.max(overhang, mGlyphAtlases[i].getOverhang());
+            }
+
+            // Characters only reach into the strips next to their own
+            int minColumns = (int) Math.ceil((2 * overhang + 1) / textSize);
+            int threads = nodeHistory != null || mSeedRandom != null ? 1
+                    : Math.max(Math.min(parallelThreads, columns / minColumns), 1);
+            int stripColumns = (columns + threads - 1) / threads;
+
+            threads = (columns + stripColumns - 1) / stripColumns;
+            RainStrip[] rainStrips = new RainStrip[threads];
+
+            for (int i = 0; i < threads; i++) {
+                int start = i * stripColumns;
+                int end = Math.min(start + stripColumns, columns);
+
+                rainStrips[i] = new RainStrip(canvas != null ? canvas : new Canvas(mBackBitmap),
+                        textPaint, start, end, columns, layers, grid, overhang);
+            }
+
+            // The layers only needed a canvas of the right size
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && nodeHistory != null) {
+                nodeHistory.discardRecording();
+            }
+
+            synchronized (mBufferLock) {
+                // The published frame may still be drawn, so it is never reconfigured
+                mFrontBitmap = nodeHistory != null ? null
+                        : obtainBitmap(mFrontBitmap, renderWidth, renderHeight, config, false);
+                mNodeHistory = nodeHistory;
+                mDepthLayers = depthLayers;
+                mConfig = config;
+                mDrawWidth = width;
+                mDrawHeight = height;
+            }
+
+            // Published once complete, for the state to be read without the lock
+            mRainStrips = rainStrips;
+            mAllocatedBytes = countAllocatedBytes();
+
+            if (mPendingDrops != null) {
+                setColumnDrops(mPendingDrops);
+            }
+        }
+    }
+
+    /**
+     * Create the buffers and layers again before the next frame, at the same size. Changes to the
+     * text paint need this to take effect.
+     */
+    public void requestLayout() {
+        mLayoutRequested = true;
+    }
+
+    /**
+     * Check if there are layers to render. This is true after the first layout.
+     *
+     * @return True if frames can be rendered.
+     */
+    public boolean isReady() {
+        return mRainStrips != null;
+    }
+
+    /**
+     * Render the next frame into the back buffers, then publish it to be drawn. Strips are rendered
+     * in parallel if there are threads for them.
+     */
+    public void render() {
+        render(1);
+    }
+
+    /**
+     * Render the next steps of the rain into the back buffers, then publish the frame to be drawn.
+     * Steps that were missed are caught up in the same buffers, each fading the one before.
+     *
+     * @param steps Number of rain steps to run.
+     */
+    public void render(int steps) {
+        synchronized (mRenderLock) {
+            if (mQualityReset) {
+                mQualityReset = false;
+                resetQuality();
+            }
+
+            // Any new size or settings
+            prewarm();
+
+            if (mRainStrips == null || steps < 1) return;
+
+            RainTrace.beginSection(RainTrace.RENDER);
+
+            long startTime = System.nanoTime();
+
+            mFadePaint.setAlpha(255 - (int) (mRainAlpha * 255));
+            mFadeColor = mFadePaint.getAlpha() << 24;
+            mSteps = steps;
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && mNodeHistory != null) {
+                // Only the new characters are recorded, and the display fades the rest
+                for (int step = 0; step < steps; step++) {
+                    if (step > 0) {
+                        synchronized (mBufferLock) {
+                            mNodeHistory.publish();
+                        }
+                    }
+
+                    Canvas canvas = mNodeHistory.beginRecording();
+
+                    for (RainStrip strip : mRainStrips) {
+                        strip.record(canvas);
+                    }
+                }
+            } else {
+                // The strips are updated together, then the characters between them are drawn
+                for (int step = 0; step < steps; step++) {
+                    mStep = step;
+                    runStrips();
+                    drawSeams();
+                }
+            }
+
+            long fadeTime = 0;
+
+            for (RainStrip strip : mRainStrips) {
+                fadeTime = Math.max(fadeTime, strip.mFadeTime);
+            }
+
+            for (DepthLayer layer : mDepthLayers) {
+                layer.run();
+                fadeTime += layer.mFadeTime;
+            }
+
+            RainTrace.beginSection(RainTrace.PUBLISH);
+
+            // Publish the completed frame
+            synchronized (mBufferLock) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && mNodeHistory != null) {
+                    mNodeHistory.publish();
+                } else {
+                    Bitmap bitmap = mFrontBitmap;
+                    mFrontBitmap = mBackBitmap;
+                    mBackBitmap = bitmap;
+                }
+
+                for (DepthLayer layer : mDepthLayers) {
+                    layer.swap();
+                }
+
+                if (mFrameStatsEnabled) {
+                    mPublishTime = System.nanoTime();
+                    mRenderTime = mPublishTime - startTime;
+                    mFadeTime = fadeTime;
+                }
+
+                mFrameCount++;
+            }
+
+            RainTrace.endSection();
+
+            if (mNodeHistory == null) {
+                for (RainStrip strip : mRainStrips) {
+                    strip.mCanvas.setBitmap(mBackBitmap);
+                }
+            }
+
+            // Measured per step, as catching up is not the usual cost
+            if (mRainAdaptive && mRainGovernor.update((System.nanoTime() - startTime) / steps, mFrameBudget)) {
+                requestLayout();
+
+                RainTrace.setCounter(RainTrace.QUALITY, mRainGovernor.getLevel());
+
+                if (mOnQualityChangedListener != null) {
+                    mOnQualityChangedListener.onQualityChanged(mRainGovernor.getLevel());
+                }
+            }
+
+            RainTrace.endSection();
+        }
+    }
+
+    /**
+     * Draw the last completed frame. Far layers are scaled up with filtering. Alpha buffers are
+     * tinted with the current text color, so color changes show straight away. Recorded frames
+     * can only be drawn on a hardware canvas, and nothing is drawn on any other.
+     *
+     * @param canvas Canvas to draw on.
+     * @param left   Left side of the rain.
+     * @param top    Top of the rain.
+     */
+    public void draw(@NonNull Canvas canvas, int left, int top) {
+        synchronized (mBufferLock) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && mNodeHistory != null
+                    && canvas.isHardwareAccelerated()) {
+                mNodeHistory.draw(canvas, left, top);
+                return;
+            }
+
+            if (mFrontBitmap == null) return;
+
+            // Color is ignored for ARGB buffers, but not the alpha
+            int color = mConfig == Bitmap.Config.ALPHA_8 ? mTextPaint.getColor() | 0xFF000000 : 0xFF000000;
+            mBitmapPaint.setColor(color);
+            mFilterPaint.setColor(color);
+
+            mDstRect.set(left, top, left + mDrawWidth, top + mDrawHeight);
+
+            // Scale up a smaller render with filtering
+            if (mFrontBitmap.getWidth() == mDrawWidth && mFrontBitmap.getHeight() == mDrawHeight) {
+                canvas.drawBitmap(mFrontBitmap, left, top, mBitmapPaint);
+            } else {
+                canvas.drawBitmap(mFrontBitmap, null, mDstRect, mFilterPaint);
+            }
+
+            if (mDepthLayers.length > 0) {
+                for (DepthLayer layer : mDepthLayers) {
+                    canvas.drawBitmap(layer.mFront, null, mDstRect, mFilterPaint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop any worker threads. They are started again by the next frame if needed.
+     */
+    public void release() {
+        synchronized (mRenderLock) {
+            if (mRainWorkers != null) {
+                mRainWorkers.quit();
+                mRainWorkers = null;
+            }
+        }
+    }
+
+    /**
+     * Use the workers and characters of a shared engine instead of its own. This takes effect
+     * with the next frame.
+     *
+     * @param workers    Workers shared between renderers, or null for its own.
+     * @param atlasCache Characters shared between renderers, or null for its own.
+     */
+    void setSharedResources(@Nullable RainWorkers workers, @Nullable GlyphAtlasCache atlasCache) {
+        synchronized (mRenderLock) {
+            release();
+
+            mSharedWorkers = workers;
+            mAtlasCache = atlasCache;
+            requestLayout();
+        }
+    }
+
+    /**
+     * Start the rain again from a seed, with nothing on screen. The same seed, size and settings
+     * give the same frames, as the rain is then drawn in a single strip. This drops the buffers,
+     * which are created again by the next frame.
+     *
+     * <p>While seeded, the rain threads setting has no effect. Use {@link #clearSeed()} to render
+     * in parallel again.</p>
+     *
+     * @param seed Seed for the random numbers.
+     */
+    public void setSeed(long seed) {
+        synchronized (mRenderLock) {
+            releaseBuffers();
+
+            mPendingDrops = null;
+            mSeedRandom = new RainRandom(seed);
+        }
+    }
+
+    /**
+     * Go back to random numbers that differ each time, after {@link #setSeed(long)}. The drops
+     * carry on where they are, and the next frame splits the rain into strips for the rain threads
+     * again.
+     */
+    public void clearSeed() {
+        synchronized (mRenderLock) {
+            if (mSeedRandom == null) return;
+
+            mSeedRandom = null;
+            requestLayout();
+        }
+    }
+
+    /**
+     * Get the position, speed and remaining length of the drop in each column, for each layer. This
+     * is the state to save for the rain to carry on where it was.
+     *
+     * @return {@link RainSimulation#DROP_STATE_SIZE} values for each column of each layer, or null
+     * if there is no layout yet.
+     */
+    @Nullable
+    public float[][] getColumnDrops() {
+        // Read without the lock, so a frame in progress doesn't hold up the caller. Any drops it
+        // moves are saved from one frame or the other.
+        RainStrip[] rainStrips = mRainStrips;
+        DepthLayer[] depthLayers = mDepthLayers;
+
+        if (rainStrips == null || depthLayers == null) return mPendingDrops;
+
+        int layers = rainStrips[0].mLayers.length;
+        float[][] drops = new float[layers + depthLayers.length][];
+
+        for (int i = 0; i < layers; i++) {
+            RainStrip last = rainStrips[rainStrips.length - 1];
+            drops[i] = new float[(last.mStart + last.mLayers[i].getSimulation().getColumnCount())
+                    * RainSimulation.DROP_STATE_SIZE];
+
+            for (RainStrip strip : rainStrips) {
+                RainSimulation simulation = strip.mLayers[i].getSimulation();
+
+                for (int column = 0; column < simulation.getColumnCount(); column++) {
+                    simulation.getDrop(column, drops[i], (strip.mStart + column) * RainSimulation.DROP_STATE_SIZE);
+                }
+            }
+        }
+
+        for (int i = 0; i < depthLayers.length; i++) {
+            RainSimulation simulation = depthLayers[i].mLayers[0].getSimulation();
+            drops[layers + i] = new float[simulation.getColumnCount() * RainSimulation.DROP_STATE_SIZE];
+
+            for (int column = 0; column < simulation.getColumnCount(); column++) {
+                simulation.getDrop(column, drops[layers + i], column * RainSimulation.DROP_STATE_SIZE);
+            }
+        }
+
+        return drops;
+    }
+
+    /**
+     * Set the position, speed and remaining length of the drop in each column, for each layer. Drops
+     * are matched by layer and column, so any that no longer exist are ignored. They are kept for
+     * the next layout if there is none yet.
+     *
+     * @param drops {@link RainSimulation#DROP_STATE_SIZE} values for each column of each layer.
+     */
+    public void setColumnDrops(@NonNull float[][] drops) {
+        synchronized (mRenderLock) {
+            if (mRainStrips == null) {
+                mPendingDrops = drops;
+                return;
+            }
+
+            mPendingDrops = null;
+
+            int layers = mRainStrips[0].mLayers.length;
+
+            for (int i = 0; i < Math.min(layers, drops.length); i++) {
+                for (RainStrip strip : mRainStrips) {
+                    RainSimulation simulation = strip.mLayers[i].getSimulation();
+                    int columns = Math.min(simulation.getColumnCount(),
+                            drops[i].length / RainSimulation.DROP_STATE_SIZE - strip.mStart);
+
+                    for (int column = 0; column < columns; column++) {
+                        simulation.setDrop(column, drops[i], (strip.mStart + column) * RainSimulation.DROP_STATE_SIZE);
+                    }
+                }
+            }
+
+            for (int i = 0; i < Math.min(mDepthLayers.length, drops.length - layers); i++) {
+                RainSimulation simulation = mDepthLayers[i].mLayers[0].getSimulation();
+                int columns = Math.min(simulation.getColumnCount(),
+                        drops[layers + i].length / RainSimulation.DROP_STATE_SIZE);
+
+                for (int column = 0; column < columns; column++) {
+                    simulation.setDrop(column, drops[layers + i], column * RainSimulation.DROP_STATE_SIZE);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop the buffers, layers and characters, so that nothing is held while the rain is hidden.
+     * They are created again at the same size by the next frame. This waits for any frame in
+     * progress, so it is best called from the render thread.
+     */
+    public void releaseBuffers() {
+        synchronized (mRenderLock) {
+            release();
+
+            // Carry on from here when shown again
+            mPendingDrops = getColumnDrops();
+            mRainStrips = null;
+            mBackBitmap = null;
+            mGlyphAtlases = new GlyphAtlas[0];
+
+            synchronized (mBufferLock) {
+                mFrontBitmap = null;
+                mDepthLayers = null;
+                mNodeHistory = null;
+            }
+
+            mAllocatedBytes = 0;
+            requestLayout();
+        }
+    }
+
+    /**
+     * Get the memory held by the buffers and characters of the rain. Recorded frames are not
+     * counted, as they are held by the display. This is counted with each layout, so it doesn't
+     * wait for a frame in progress.
+     *
+     * @return Size in bytes.
+     */
+    public long getAllocatedBytes() {
+        return mAllocatedBytes;
+    }
+
+    /**
+     * Count the memory held by the buffers and characters of the rain. The render lock must be held.
+     *
+     * @return Size in bytes.
+     */
+    private long countAllocatedBytes() {
+        synchronized (mBufferLock) {
+            long bytes = getAllocatedBytes(mFrontBitmap) + getAllocatedBytes(mBackBitmap);
+
+            if (mDepthLayers != null) {
+                for (DepthLayer layer : mDepthLayers) {
+                    bytes += getAllocatedBytes(layer.mFront) + getAllocatedBytes(layer.mBack);
+                }
+            }
+
+            GlyphAtlas[] glyphAtlases = mGlyphAtlases;
+
+            // Layers with the same text share an atlas
+            for (int i = 0; i < glyphAtlases.length; i++) {
+                if (glyphAtlases[i] != null && Arrays.asList(glyphAtlases).indexOf(glyphAtlases[i]) == i) {
+                    bytes += getAllocatedBytes(glyphAtlases[i].getBitmap());
+                }
+            }
+
+            return bytes;
+        }
+    }
+
+    /**
+     * Get the memory held by a bitmap.
+     *
+     * @param bitmap Bitmap to measure, if any.
+     * @return Size in bytes.
+     */
+    private static long getAllocatedBytes(@Nullable Bitmap bitmap) {
+        if (bitmap == null) return 0;
+
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT ? bitmap.getAllocationByteCount() : bitmap.getByteCount();
+    }
+
+    /**
+     * Get a buffer of the given size and config. The old buffer is kept if it is the same, or
+     * reconfigured if allowed and it has the memory for it, as it would be when shrinking or
+     * rotating. Only a buffer that is not being drawn can be reconfigured.
+     *
+     * @param bitmap      Buffer to reuse, if any.
+     * @param width       Width of the buffer.
+     * @param height      Height of the buffer.
+     * @param config      Config of the buffer.
+     * @param reconfigure True if the buffer can be reconfigured.
+     * @return Buffer of the given size.
+     */
+    private static Bitmap obtainBitmap(@Nullable Bitmap bitmap, int width, int height, Bitmap.Config config,
+                                       boolean reconfigure) {
+        if (bitmap != null && bitmap.getWidth() == width && bitmap.getHeight() == height
+                && bitmap.getConfig() == config) {
+            return bitmap;
+        }
+
+        int bytes = width * height * (config == Bitmap.Config.ALPHA_8 ? 1 : 4);
+
+        if (reconfigure && bitmap != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                && bitmap.getAllocationByteCount() >= bytes) {
+            bitmap.reconfigure(width, height, config);
+            bitmap.eraseColor(Color.TRANSPARENT);
+
+            return bitmap;
+        }
+
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Find the built-in alphabet for an attribute value. Unknown values use the default.
+     *
+     * @param rainAlphabet Attribute value of the alphabet.
+     * @return The alphabet.
+     */
+    private static RainAlphabet getAlphabet(int rainAlphabet) {
+        return rainAlphabet >= 0 && rainAlphabet < ALPHABETS.length ? ALPHABETS[rainAlphabet] : ALPHABETS[RAIN_ALPHABET];
+    }
+
+    /**
+     * Keep the render scale within sanity values. Anything above 1 would cost more than it gains.
+     *
+     * @param renderScale Render scale of the rain.
+     * @return Render scale between 0.1 and 1.
+     */
+    private static float clampRenderScale(float renderScale) {
+        return Math.min(Math.max(renderScale, MIN_RENDER_SCALE), 1);
+    }
+
+    /**
+     * Check if the paint draws in a single color. The rain can then be kept as an alpha mask and
+     * tinted when drawn, for a quarter of the memory and fade bandwidth.
+     *
+     * @param paint Paint for the text rain.
+     * @return True if only the alpha is needed.
+     */
+    private static boolean isMaskPaint(Paint paint) {
+        return paint.getShader() == null && paint.getColorFilter() == null && paint.getXfermode() == null;
+    }
+
+    /**
+     * Create a layer of rain for a range of columns with the given engine.
+     *
+     * @param canvas     Drawing canvas to use.
+     * @param paint      Paint to draw with.
+     * @param glyphAtlas Characters rendered with the paint.
+     * @param start      First column to draw.
+     * @param end        Column after the last to draw.
+     * @param grid       True for the grid engine.
+     * @return The rain layer.
+     */
+    private RainLayer createLayer(Canvas canvas, Paint paint, GlyphAtlas glyphAtlas, int start, int end, boolean grid) {
+        // Seeded layers are created in the same order each time
+        RainRandom random = mSeedRandom != null ? new RainRandom(mSeedRandom.nextLong()) : new RainRandom();
+
+        if (grid) {
+            return new RainGrid(canvas, paint, glyphAtlas, start, end, mRainAlpha, random, mRainVaried);
+        }
+
+        return new Rain(canvas, paint, glyphAtlas, start, end, random, mRainVaried);
+    }
+
+    /**
+     * Run each strip for the current step, on the workers if there are more than one.
+     */
+    private void runStrips() {
+        if (mSharedWorkers != null && mRainStrips.length <= mSharedWorkers.getTaskCount()) {
+            mSharedWorkers.execute(mRainStrips);
+        } else if (mSharedWorkers != null) {
+            // Strips are from before the workers were shared
+            for (RainStrip strip : mRainStrips) {
+                strip.run();
+            }
+        } else if (mRainStrips.length > 1) {
+            // Workers to match the strips
+            if (mRainWorkers == null || mRainWorkers.getTaskCount() != mRainStrips.length) {
+                if (mRainWorkers != null) {
+                    mRainWorkers.quit();
+                }
+
+                mRainWorkers = new RainWorkers(mRainStrips.length - 1);
+            }
+
+            mRainWorkers.execute(mRainStrips);
+        } else {
+            mRainStrips[0].run();
+        }
+    }
+
+    /**
+     * Draw the characters that reach across the edges between strips, once all of them are
+     * updated. Each seam is drawn layer by layer with the columns in order, so the frame is the same
+     * as it would be with a single strip.
+     */
+    private void drawSeams() {
+        for (int i = 1; i < mRainStrips.length; i++) {
+            RainStrip before = mRainStrips[i - 1];
+            RainStrip after = mRainStrips[i];
+            Canvas canvas = after.mCanvas;
+
+            int saveCount = canvas.save();
+            canvas.clipRect(before.mInnerRight, 0, after.mInnerLeft, canvas.getHeight());
+
+            for (int layer = 0; layer < after.mLayers.length; layer++) {
+                RainLayer last = before.mLayers[layer];
+                int columns = last.getSimulation().getColumnCount();
+
+                last.drawColumns(canvas, Math.min(before.mSeamStart, columns), columns);
+                after.mLayers[layer].drawColumns(canvas, 0, after.mSeamEnd);
+            }
+
+            canvas.restoreToCount(saveCount);
+        }
+    }
+
+    /**
+     * Start a new frame on the canvas. The canvas engine carries the last frame forward, faded,
+     * while the grid engine starts from nothing and draws its visible cells again.
+     *
+     * @param canvas Drawing canvas to use.
+     * @param front  The last frame.
+     * @param layers Layers drawn to the canvas.
+     * @param grid   True for the grid engine.
+     */
+    private void beginFrame(Canvas canvas, Bitmap front, RainLayer[] layers, boolean grid) {
+        if (grid) {
+            canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+
+            for (RainLayer layer : layers) {
+                ((RainGrid) layer).setRainAlpha(mRainAlpha);
+            }
+        } else {
+            // Copying with SRC and the remaining alpha is the same as a DST_OUT fade, in one pass
+            // over the pixels
+            canvas.drawBitmap(front, 0, 0, mFadePaint);
+        }
+    }
+
+    /**
+     * Start another step of the frame on the same canvas, when catching up. The canvas engine
+     * fades the step before in place, as there is no other buffer to copy from.
+     *
+     * @param canvas Drawing canvas to use.
+     * @param grid   True for the grid engine.
+     */
+    private void continueFrame(Canvas canvas, boolean grid) {
+        if (grid) {
+            canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+        } else {
+            canvas.drawColor(mFadeColor, PorterDuff.Mode.DST_IN);
+        }
+    }
+
+    /**
+     * Get the number of threads to draw with. Devices with few cores only use the render thread,
+     * as the workers would compete with the UI.
+     *
+     * @return Thread count.
+     */
+    private int getParallelThreads() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return cores < MIN_PARALLEL_CORES ? 1 : Math.min(mRainThreads, cores);
+    }
+
+    /**
+     * Set the time available to render each frame. This is the budget the quality is measured
+     * against, usually the rain speed. A new budget is measured from full quality again.
+     *
+     * @param frameBudget Time interval in milliseconds, or 0 for no budget.
+     */
+    public void setFrameBudget(int frameBudget) {
+        long budget = Math.max(frameBudget, 0) * 1000000L;
+
+        if (budget != mFrameBudget) {
+            mFrameBudget = budget;
+            mQualityReset = true;
+        }
+    }
+
+    /**
+     * Go back to full quality with the next frame, and forget the frame times. Must hold the
+     * render lock.
+     */
+    private void resetQuality() {
+        int level = mRainGovernor.getLevel();
+
+        mRainGovernor.reset();
+
+        if (level == 0) return;
+
+        requestLayout();
+
+        RainTrace.setCounter(RainTrace.QUALITY, 0);
+
+        if (mRainAdaptive && mOnQualityChangedListener != null) {
+            mOnQualityChangedListener.onQualityChanged(0);
+        }
+    }
+
+    /**
+     * Get the current quality level. Level 0 is full quality, and each level above it turns off
+     * the depth, drops a layer or makes the columns wider.
+     *
+     * @return Quality level.
+     */
+    public int getQualityLevel() {
+        return mRainAdaptive ? mRainGovernor.getLevel() : 0;
+    }
+
+    /**
+     * Get the adaptive quality status. This determines if the quality is lowered when frames take
+     * too long to render.
+     *
+     * @return Adaptive quality status.
+     */
+    public boolean isRainAdaptive() {
+        return mRainAdaptive;
+    }
+
+    /**
+     * Set the adaptive quality status. This determines if the quality is lowered when frames take
+     * too long to render. This takes effect with the next frame, starting from full quality.
+     *
+     * @param rainAdaptive Adaptive quality status.
+     */
+    public void setRainAdaptive(boolean rainAdaptive) {
+        mRainAdaptive = rainAdaptive;
+        mQualityReset = true;
+        requestLayout();
+    }
+
+    /**
+     * Set a listener for changes to the quality level. It is called on the render thread.
+     *
+     * @param listener Listener to notify, or null for none.
+     */
+    public void setOnQualityChangedListener(@Nullable OnQualityChangedListener listener) {
+        mOnQualityChangedListener = listener;
+    }
+
+    /**
+     * Set whether the phases of each frame are timed. Nothing is measured while this is off.
+     *
+     * @param frameStatsEnabled True to time the frames.
+     */
+    public void setFrameStatsEnabled(boolean frameStatsEnabled) {
+        mFrameStatsEnabled = frameStatsEnabled;
+    }
+
+    /**
+     * Get the number of frames published since the renderer was created.
+     *
+     * @return Frame count.
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Get the time taken to render the last published frame, including the fade.
+     *
+     * @return Time in nanoseconds, or 0 if not timed.
+     */
+    public long getRenderTime() {
+        return mRenderTime;
+    }
+
+    /**
+     * Get the time taken to fade the last frame before the rain was drawn over it.
+     *
+     * @return Time in nanoseconds, or 0 if not timed.
+     */
+    public long getFadeTime() {
+        return mFadeTime;
+    }
+
+    /**
+     * Get the time the last frame was published, from {@link System#nanoTime()}.
+     *
+     * @return Time in nanoseconds, or 0 if not timed.
+     */
+    public long getPublishTime() {
+        return mPublishTime;
+    }
+
+    /**
+     * Get the opacity used for the trailing text effect. The range is from 0 to 1 for none.
+     *
+     * @return Falling rain alpha.
+     */
+    public float getRainAlpha() {
+        return mRainAlpha;
+    }
+
+    /**
+     * Check if frames are drawn on a hardware canvas.
+     *
+     * @return True if hardware accelerated.
+     */
+    public boolean isHardwareAccelerated() {
+        return mHardwareAccelerated;
+    }
+
+    /**
+     * Set whether frames are drawn on a hardware canvas. From Q, the canvas engine then records the
+     * characters of each frame, and the display fades and draws them on its own render thread.
+     * Depth layers drawn at a smaller size still use bitmaps. This takes effect with the next frame.
+     *
+     * @param hardwareAccelerated True if hardware accelerated.
+     */
+    public void setHardwareAccelerated(boolean hardwareAccelerated) {
+        if (hardwareAccelerated == mHardwareAccelerated) return;
+
+        mHardwareAccelerated = hardwareAccelerated;
+        requestLayout();
+    }
+
+    /**
+     * Set the opacity used for the trailing text effect. The range is from 0 to 1 for none. This
+     * takes effect with the next frame.
+     *
+     * @param rainAlpha Falling rain alpha.
+     */
+    public void setRainAlpha(float rainAlpha) {
+        // Trails too long for the history are drawn on the canvas instead
+        if (mRainEngine == DigitalRain.ENGINE_HISTORY && isHistoryFaded(rainAlpha) != isHistoryFaded(mRainAlpha)) {
+            requestLayout();
+        }
+
+        mRainAlpha = rainAlpha;
+    }
+
+    /**
+     * Check if the trails have faded out within the frames kept by the history engine, to less
+     * than half a step of alpha.
+     *
+     * @param rainAlpha Falling rain alpha.
+     * @return True if the history is long enough.
+     */
+    private static boolean isHistoryFaded(float rainAlpha) {
+        float fade = (255 - (int) (rainAlpha * 255)) / 255f;
+
+        return Math.pow(fade, MAX_HISTORY) * 255 < 0.5;
+    }
+
+    /**
+     * Get the characters the rain is made of.
+     *
+     * @return The alphabet.
+     */
+    @NonNull
+    public RainAlphabet getRainAlphabet() {
+        return mRainAlphabet;
+    }
+
+    /**
+     * Set the characters the rain is made of. The characters are rendered again with the next
+     * frame.
+     *
+     * @param rainAlphabet The alphabet.
+     */
+    public void setRainAlphabet(@NonNull RainAlphabet rainAlphabet) {
+        mRainAlphabet = rainAlphabet;
+        requestLayout();
+    }
+
+    /**
+     * Get the depth blur used for layers. The blur is rendered once into the layer characters.
+     *
+     * @return The layer depth blur.
+     */
+    public float getRainDepth() {
+        return mRainDepth;
+    }
+
+    /**
+     * Set the depth blur used for layers. This takes effect with the next frame.
+     *
+     * @param rainDepth The layer depth blur.
+     */
+    public void setRainDepth(float rainDepth) {
+        mRainDepth = rainDepth;
+        requestLayout();
+    }
+
+    /**
+     * Get the depth mode used for layers.
+     *
+     * @return The layer depth mode.
+     */
+    public int getRainDepthMode() {
+        return mRainDepthMode;
+    }
+
+    /**
+     * Set the depth mode used for layers. This takes effect with the next frame.
+     *
+     * @param rainDepthMode The layer depth mode.
+     */
+    public void setRainDepthMode(int rainDepthMode) {
+        mRainDepthMode = rainDepthMode;
+        requestLayout();
+    }
+
+    /**
+     * Get the engine used for the rain.
+     *
+     * @return The rain engine.
+     */
+    public int getRainEngine() {
+        return mRainEngine;
+    }
+
+    /**
+     * Set the engine used for the rain. This takes effect with the next frame.
+     *
+     * @param rainEngine The rain engine.
+     */
+    public void setRainEngine(int rainEngine) {
+        mRainEngine = rainEngine;
+        requestLayout();
+    }
+
+    /**
+     * Get the varied drop status.
+     *
+     * @return True if drops fall at different speeds.
+     */
+    public boolean isRainVaried() {
+        return mRainVaried;
+    }
+
+    /**
+     * Set the varied drop status. This takes effect with the next frame.
+     *
+     * @param rainVaried Varied drop status.
+     */
+    public void setRainVaried(boolean rainVaried) {
+        mRainVaried = rainVaried;
+        requestLayout();
+    }
+
+    /**
+     * Get the number of layers used for the rain.
+     *
+     * @return Number of rain layers.
+     */
+    public int getRainIntensity() {
+        return mRainIntensity;
+    }
+
+    /**
+     * Set the number of layers used for the rain. This takes effect with the next frame.
+     *
+     * @param rainIntensity Number of rain layers.
+     */
+    public void setRainIntensity(int rainIntensity) {
+        mRainIntensity = Math.max(rainIntensity, 0);
+        requestLayout();
+    }
+
+    /**
+     * Set the most layers drawn, whatever the rain intensity. This lets the layers be dropped for
+     * a while without changing the setting. This takes effect with the next frame.
+     *
+     * @param intensityLimit Most rain layers, or {@link Integer#MAX_VALUE} for no limit.
+     */
+    public void setIntensityLimit(int intensityLimit) {
+        intensityLimit = Math.max(intensityLimit, 1);
+
+        if (intensityLimit == mIntensityLimit) return;
+
+        mIntensityLimit = intensityLimit;
+        requestLayout();
+    }
+
+    /**
+     * Get the scale of the rendered rain relative to its size.
+     *
+     * @return Render scale of the rain.
+     */
+    public float getRainRenderScale() {
+        return mRainRenderScale;
+    }
+
+    /**
+     * Set the scale of the rendered rain relative to its size. This takes effect with the next
+     * frame.
+     *
+     * @param rainRenderScale Render scale of the rain.
+     */
+    public void setRainRenderScale(float rainRenderScale) {
+        mRainRenderScale = clampRenderScale(rainRenderScale);
+        requestLayout();
+    }
+
+    /**
+     * Get the number of threads used to draw the rain.
+     *
+     * @return Number of rain threads.
+     */
+    public int getRainThreads() {
+        return mRainThreads;
+    }
+
+    /**
+     * Set the number of threads used to draw the rain. This takes effect with the next frame, but
+     * not while the rain has a seed from {@link #setSeed(long)}.
+     *
+     * @param rainThreads Number of rain threads.
+     */
+    public void setRainThreads(int rainThreads) {
+        mRainThreads = Math.max(rainThreads, 1);
+        requestLayout();
+    }
+
+    /**
+     * Get the rain text paint.
+     *
+     * @return Paint for the text rain.
+     */
+    @NonNull
+    public Paint getTextPaint() {
+        return mTextPaint;
+    }
+
+    /**
+     * Set the color of the rain text paint. Alpha buffers are tinted with it when drawn, so the
+     * layers are only created again for a new alpha, or for buffers and recorded frames that hold
+     * the color itself.
+     *
+     * @param color Color of the text.
+     */
+    public void setTextColor(@ColorInt int color) {
+        int oldColor = mTextPaint.getColor();
+        boolean tinted;
+
+        mTextPaint.setColor(color);
+
+        synchronized (mBufferLock) {
+            tinted = mConfig == Bitmap.Config.ALPHA_8 && mNodeHistory == null;
+        }
+
+        if (!tinted || Color.alpha(color) != Color.alpha(oldColor)) {
+            requestLayout();
+        }
+    }
+
+    /**
+     * Set the rain text paint. This takes effect with the next frame.
+     *
+     * @param textPaint Paint for the text rain.
+     */
+    public void setTextPaint(@NonNull Paint textPaint) {
+        mTextPaint = textPaint;
+        requestLayout();
+    }
+
+    /**
+     * A vertical strip of the rain columns. It has its own canvas and layers so that it can be
+     * drawn at the same time as the others, clipped so they never touch the same pixels.
+     */
+    private class RainStrip implements Runnable {
+
+        private Canvas mCanvas;
+        private RainLayer[] mLayers;
+        private boolean mGrid;
+        private int mStart;
+        private int mLeft;
+        private int mRight;
+        private int mInnerLeft;
+        private int mInnerRight;
+        private int mSeamStart;
+        private int mSeamEnd;
+        private long mFadeTime;
+
+        /**
+         * Constructor to create the layers for a range of columns. Characters within reach of the
+         * strips on either side are left for the seams.
+         *
+         * @param canvas   Drawing canvas to use.
+         * @param paint    Paint for the text rain.
+         * @param start    First column in the strip.
+         * @param end      Column after the last in the strip.
+         * @param columns  Number of columns in all the strips.
+         * @param layers   Number of layers drawn to the strip.
+         * @param grid     True for the grid engine.
+         * @param overhang How far characters reach past their columns.
+         */
+        RainStrip(Canvas canvas, Paint paint, int start, int end, int columns, int layers, boolean grid,
+                  int overhang) {
+            float textSize = paint.getTextSize();
+
+            mCanvas = canvas;
+            mLayers = new RainLayer[layers];
+            mGrid = grid;
+            mStart = start;
+            mLeft = (int) (start * textSize);
+            mRight = (int) Math.min(end * textSize, canvas.getWidth());
+            mInnerLeft = start > 0 ? mLeft + overhang : mLeft;
+            mInnerRight = Math.max(end < columns ? mRight - overhang : mRight, mInnerLeft);
+
+            // Columns that can reach the seam on either side
+            mSeamStart = Math.max((int) ((mRight - 2 * overhang) / textSize) - 1 - start, 0);
+            mSeamEnd = Math.min((int) ((mLeft + 2 * overhang) / textSize) + 1 - start, end - start);
+
+            for (int i = 0; i < mLayers.length; i++) {
+                mLayers[i] = createLayer(mCanvas, paint, mGlyphAtlases[i], start, end, grid);
+            }
+        }
+
+        @Override
+        public void run() {
+            int saveCount = mCanvas.save();
+            mCanvas.clipRect(mLeft, 0, mRight, mCanvas.getHeight());
+
+            if (mStep == 0) {
+                long startTime = mFrameStatsEnabled ? System.nanoTime() : 0;
+
+                RainTrace.beginSection(RainTrace.FADE);
+                beginFrame(mCanvas, mFrontBitmap, mLayers, mGrid);
+                RainTrace.endSection();
+
+                mFadeTime = mFrameStatsEnabled ? System.nanoTime() - startTime : 0;
+            } else {
+                continueFrame(mCanvas, mGrid);
+            }
+
+            RainTrace.beginSection(RainTrace.LAYERS);
+
+            // Only this strip draws between the seams
+            mCanvas.clipRect(mInnerLeft, 0, mInnerRight, mCanvas.getHeight());
+
+            for (RainLayer layer : mLayers) {
+                layer.tick();
+                layer.drawColumns(mCanvas, 0, layer.getSimulation().getColumnCount());
+            }
+
+            RainTrace.endSection();
+
+            mCanvas.restoreToCount(saveCount);
+        }
+
+        /**
+         * Record only the new characters of the frame, for the canvas engine. There is nothing to
+         * fade or clip, as the frame starts empty.
+         *
+         * @param canvas Recording canvas of the frame.
+         */
+        void record(Canvas canvas) {
+            mCanvas = canvas;
+            mFadeTime = 0;
+
+            RainTrace.beginSection(RainTrace.LAYERS);
+
+            for (RainLayer layer : mLayers) {
+                ((Rain) layer).setCanvas(canvas);
+                layer.draw();
+            }
+
+            RainTrace.endSection();
+        }
+    }
+
+    /**
+     * A far layer drawn into its own smaller buffers. It is scaled up with filtering when drawn,
+     * which gives the blur for its depth.
+     */
+    private class DepthLayer implements Runnable {
+
+        private Bitmap mFront;
+        private Bitmap mBack;
+        private Canvas mCanvas;
+        private RainLayer[] mLayers;
+        private boolean mGrid;
+        private long mFadeTime;
+
+        /**
+         * Constructor to create the buffers and rain for the layer.
+         *
+         * @param width      Width of the rain.
+         * @param height     Height of the rain.
+         * @param config     Config of the buffers.
+         * @param paint      Paint to draw with, with the text size already scaled.
+         * @param glyphAtlas Characters rendered with the paint.
+         * @param scale      Size of the buffers relative to the rain.
+         * @param grid       True for the grid engine.
+         */
+        DepthLayer(int width, int height, Bitmap.Config config, Paint paint, GlyphAtlas glyphAtlas, float scale, boolean grid) {
+            int scaledWidth = Math.max(Math.round(width * scale), 1);
+            int scaledHeight = Math.max(Math.round(height * scale), 1);
+
+            mFront = Bitmap.createBitmap(scaledWidth, scaledHeight, config);
+            mBack = Bitmap.createBitmap(scaledWidth, scaledHeight, config);
+            mCanvas = new Canvas(mBack);
+            mGrid = grid;
+
+            int columns = Rain.getColumnCount(scaledWidth, paint.getTextSize());
+            mLayers = new RainLayer[]{createLayer(mCanvas, paint, glyphAtlas, 0, columns, grid)};
+        }
+
+        @Override
+        public void run() {
+            long startTime = mFrameStatsEnabled ? System.nanoTime() : 0;
+
+            beginFrame(mCanvas, mFront, mLayers, mGrid);
+
+            mFadeTime = mFrameStatsEnabled ? System.nanoTime() - startTime : 0;
+
+            for (int step = 0; step < mSteps; step++) {
+                if (step > 0) {
+                    continueFrame(mCanvas, mGrid);
+                }
+
+                mLayers[0].draw();
+            }
+        }
+
+        /**
+         * Publish the completed frame. Must hold the buffer lock.
+         */
+        void swap() {
+            Bitmap bitmap = mFront;
+            mFront = mBack;
+            mBack = bitmap;
+
+            mCanvas.setBitmap(mBack);
+        }
+    }
+
+    /**
+     * The last frames of the canvas engine, recorded as render nodes. Each frame only has the
+     * characters added to it, and the trails come from drawing the older frames with less alpha.
+     * The display rasterizes and fades them, so there are no bitmaps to fill or upload.
+     */
+    @RequiresApi(Build.VERSION_CODES.Q)
+    private class NodeHistory {
+
+        private RenderNode[] mFrames;
+        private float[] mAlphas;
+        private ArrayList<RenderNode> mFreeNodes;
+        private ArrayList<RenderNode> mRetiredNodes;
+        private ArrayList<RenderNode> mReleasingNodes;
+        private RenderNode mRecording;
+        private int mNewest;
+        private int mWidth;
+        private int mHeight;
+
+        /**
+         * Constructor to create an empty history for frames of the given size.
+         *
+         * @param width  Width of the frames.
+         * @param height Height of the frames.
+         */
+        NodeHistory(int width, int height) {
+            mFrames = new RenderNode[MAX_HISTORY];
+            mAlphas = new float[MAX_HISTORY];
+            mFreeNodes = new ArrayList<>();
+            mRetiredNodes = new ArrayList<>();
+            mReleasingNodes = new ArrayList<>();
+            mWidth = width;
+            mHeight = height;
+        }
+
+        /**
+         * Check if the history has frames of the given size.
+         *
+         * @param width  Width of the frames.
+         * @param height Height of the frames.
+         * @return True if the history can be kept.
+         */
+        boolean matches(int width, int height) {
+            return mWidth == width && mHeight == height;
+        }
+
+        /**
+         * Start recording the next frame. Nodes are reused once the display no longer draws them.
+         *
+         * @return Canvas to record the frame with.
+         */
+        Canvas beginRecording() {
+            synchronized (mBufferLock) {
+                int last = mFreeNodes.size() - 1;
+                mRecording = last >= 0 ? mFreeNodes.remove(last) : createNode();
+            }
+
+            return mRecording.beginRecording(mWidth, mHeight);
+        }
+
+        /**
+         * Stop recording the frame without publishing it. The node is kept for the next frame.
+         */
+        void discardRecording() {
+            mRecording.endRecording();
+
+            synchronized (mBufferLock) {
+                mFreeNodes.add(mRecording);
+                mRecording = null;
+            }
+        }
+
+        /**
+         * Publish the recorded frame as the newest. Must hold the buffer lock.
+         */
+        void publish() {
+            mRecording.endRecording();
+            mNewest = (mNewest + 1) % mFrames.length;
+
+            // The oldest frame may still be in use by the display
+            if (mFrames[mNewest] != null) {
+                mRetiredNodes.add(mFrames[mNewest]);
+            }
+
+            mFrames[mNewest] = mRecording;
+            mRecording = null;
+
+            // Nothing is drawing, so leave the rest to be collected
+            if (mRetiredNodes.size() > mFrames.length) {
+                mRetiredNodes.remove(0);
+            }
+        }
+
+        /**
+         * Draw the visible frames, oldest first, each with the alpha left after its fades. Must
+         * hold the buffer lock.
+         *
+         * @param canvas Hardware canvas to draw on.
+         * @param left   Left side of the rain.
+         * @param top    Top of the rain.
+         */
+        void draw(Canvas canvas, int left, int top) {
+            // Frames retired before the last draw have since left the display
+            mFreeNodes.addAll(mReleasingNodes);
+            mReleasingNodes.clear();
+
+            ArrayList<RenderNode> nodes = mReleasingNodes;
+            mReleasingNodes = mRetiredNodes;
+            mRetiredNodes = nodes;
+
+            // Same fade as the bitmap copy
+            float fade = (255 - (int) (mRainAlpha * 255)) / 255f;
+            float alpha = 1;
+            int count = 0;
+
+            while (count < mFrames.length && mFrames[(mNewest - count + mFrames.length) % mFrames.length] != null
+                    && alpha * 255 >= 0.5f) {
+                mAlphas[count++] = alpha;
+                alpha *= fade;
+            }
+
+            int saveCount = canvas.save();
+            canvas.translate(left, top);
+            canvas.scale((float) mDrawWidth / mWidth, (float) mDrawHeight / mHeight);
+
+            for (int age = count - 1; age >= 0; age--) {
+                RenderNode node = mFrames[(mNewest - age + mFrames.length) % mFrames.length];
+
+                node.setAlpha(mAlphas[age]);
+                canvas.drawRenderNode(node);
+            }
+
+            canvas.restoreToCount(saveCount);
+        }
+
+        /**
+         * Create a node for a frame. The characters of a frame rarely overlap, so its alpha is
+         * applied to each one without an offscreen layer.
+         *
+         * @return New render node.
+         */
+        private RenderNode createNode() {
+            RenderNode node = new RenderNode("DigitalRain");
+            node.setPosition(0, 0, mWidth, mHeight);
+            node.setHasOverlappingRendering(false);
+
+            return node;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+import android.graphics.Canvas;
+import android.graphics.PorterDuff;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.view.Surface;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Renders the rain and posts it to a surface from its own thread, at the rain speed. Nothing runs
+ * on the UI thread once the surface is set, other than changing the settings.
+ */
+class RainSurface implements Runnable {
+
+    private static final float REFRESH_RATE = 60; // Hz
+
+    private final RainRenderer mRainRenderer;
+    private final String mName;
+    private final Object mSurfaceLock = new Object();
+    private HandlerThread mRenderThread;
+    private volatile Handler mRenderHandler;
+    private Surface mSurface;
+    private volatile int mWidth;
+    private volatile int mHeight;
+    private volatile boolean mLayoutPending;
+    private volatile int mRainSpeed;
+    private volatile int mFrameTime = (int) (1000 / REFRESH_RATE);
+    private volatile boolean mRunning;
+    private volatile boolean mRestart;
+    private final RainTimestep mRainTimestep = new RainTimestep();
+    private final Runnable mReleaseRunnable;
+    private long mTickTime;
+
+    /**
+     * Constructor for a renderer without a surface yet.
+     *
+     * @param rainRenderer Renderer for the rain frames.
+     * @param name         Name of the render thread.
+     */
+    RainSurface(RainRenderer rainRenderer, String name) {
+        mRainRenderer = rainRenderer;
+        mName = name;
+
+        // Runs after any frame in progress
+        mReleaseRunnable = new Runnable() {
+            @Override
+            public void run() {
+                if (!mRunning) {
+                    mRainRenderer.releaseBuffers();
+                }
+            }
+        };
+    }
+
+    /**
+     * Set the surface to draw to, or null once it is destroyed. This waits for any frame in
+     * progress, so the surface is never used after it is gone. Nothing is created for the size
+     * until the frames are running.
+     *
+     * @param surface Surface to draw to.
+     * @param width   Width of the surface.
+     * @param height  Height of the surface.
+     */
+    void setSurface(@Nullable Surface surface, int width, int height) {
+        synchronized (mSurfaceLock) {
+            mSurface = surface;
+        }
+
+        if (surface == null) {
+            quit();
+            return;
+        }
+
+        // Long-lived worker for the frames
+        if (mRenderThread == null) {
+            mRenderThread = new HandlerThread(mName);
+            mRenderThread.start();
+            mRenderHandler = new Handler(mRenderThread.getLooper());
+        }
+
+        mWidth = width;
+        mHeight = height;
+        mLayoutPending = true;
+
+        if (mRunning) {
+            mRestart = true;
+            mRenderHandler.removeCallbacks(this);
+            mRenderHandler.post(this);
+        }
+    }
+
+    /**
+     * Start or stop the frames. The surface keeps the last frame while stopped.
+     *
+     * @param running True to render frames.
+     */
+    void setRunning(boolean running) {
+        if (mRunning == running) return;
+
+        mRunning = running;
+
+        if (mRenderHandler != null) {
+            mRenderHandler.removeCallbacks(this);
+
+            if (running) {
+                mRestart = true;
+                mRenderHandler.post(this);
+            }
+        }
+    }
+
+    /**
+     * Check if frames are being rendered.
+     *
+     * @return True if running.
+     */
+    boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * Drop the buffers, layers and characters of the stopped rain. This is done on the render
+     * thread after any frame in progress, so the UI thread does not wait for it and the frame
+     * cannot create them again. Nothing is dropped if the rain has started again by then.
+     */
+    void releaseBuffers() {
+        Handler handler = mRenderHandler;
+
+        if (handler == null) {
+            mRainRenderer.releaseBuffers();
+            return;
+        }
+
+        handler.removeCallbacks(this);
+        handler.post(mReleaseRunnable);
+    }
+
+    /**
+     * Set the refresh rate of the display. Frames are never posted closer together than one
+     * refresh, even with no time between them.
+     *
+     * @param refreshRate Refresh rate in frames per second.
+     */
+    void setRefreshRate(float refreshRate) {
+        if (refreshRate > 0) {
+            mFrameTime = Math.max((int) (1000 / refreshRate), 1);
+        }
+    }
+
+    /**
+     * Set the time between frames.
+     *
+     * @param rainSpeed Time interval in milliseconds.
+     */
+    void setRainSpeed(int rainSpeed) {
+        mRainSpeed = Math.max(rainSpeed, 0);
+        mRainRenderer.setFrameBudget(mRainSpeed);
+    }
+
+    @Override
+    public void run() {
+        long now = SystemClock.uptimeMillis();
+        Handler handler = mRenderHandler;
+
+        if (!mRunning || handler == null) return;
+
+        if (mLayoutPending) {
+            mLayoutPending = false;
+            mRainRenderer.layout(mWidth, mHeight);
+        }
+
+        // Start straight away, then keep the pace of the rain speed
+        if (mRestart) {
+            mRestart = false;
+            mRainTimestep.reset(mRainSpeed);
+        } else {
+            mRainTimestep.add(now - mTickTime, mRainSpeed);
+        }
+
+        mTickTime = now;
+
+        int steps = mRainTimestep.takeSteps(mRainSpeed);
+
+        if (steps > 0) {
+            mRainRenderer.render(steps);
+            drawFrame();
+        }
+
+        // Paced by the display when there is no rain speed
+        long delay = Math.max(mRainTimestep.getTimeUntilStep(mRainSpeed), mFrameTime);
+        handler.postAtTime(this, now + delay);
+    }
+
+    /**
+     * Draw the last rendered frame to the surface. A hardware canvas is used where available, as
+     * the frame is a single bitmap blit.
+     */
+    private void drawFrame() {
+        synchronized (mSurfaceLock) {
+            if (mSurface == null || !mSurface.isValid() || !mRainRenderer.isReady()) return;
+
+            Canvas canvas;
+
+            try {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                    canvas = mSurface.lockHardwareCanvas();
+                } else {
+                    canvas = mSurface.lockCanvas(null);
+                }
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                // Surface is going away
+                return;
+            }
+
+            try {
+                canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+                mRainRenderer.draw(canvas, 0, 0);
+            } finally {
+                mSurface.unlockCanvasAndPost(canvas);
+            }
+        }
+    }
+
+    /**
+     * Stop the render thread and release the renderer. This waits for any frame in progress.
+     */
+    private void quit() {
+        if (mRenderThread != null) {
+            mRenderHandler.removeCallbacks(this);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                mRenderThread.quitSafely();
+            } else {
+                mRenderThread.quit();
+            }
+
+            mRenderThread = null;
+            mRenderHandler = null;
+        }
+
+        mRainRenderer.release();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.TypedArray;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.Display;
+import android.view.Surface;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The settings and rendering shared by {@link DigitalRainSurfaceView} and
+ * {@link DigitalRainTextureView}. Each view only connects its own kind of surface, and passes
+ * everything else on to this.
+ */
+class RainSurfaceDelegate {
+
+    private static final int RAIN_SPEED = 100; // ms
+    private static final boolean AUTO_START = true;
+    private static final float TEXT_SIZE = 14; // sp
+
+    private final RainRenderer mRainRenderer;
+    private final RainSurface mRainSurface;
+    private int mRainSpeed;
+    private boolean mAutoStart;
+    private ColorStateList mTextColor;
+
+    /**
+     * Constructor to read the settings from the XML and create the drawing objects. Input values
+     * are checked for sanity.
+     *
+     * @param context      Context given for the view. This determines the resources and theme.
+     * @param attrs        The attributes for the inflated XML tag.
+     * @param defStyleAttr Default style attributes to apply to this view.
+     * @param defStyleRes  Default style resource to apply to this view.
+     * @param name         Name of the render thread.
+     */
+    RainSurfaceDelegate(Context context, @Nullable AttributeSet attrs, int defStyleAttr, int defStyleRes,
+                        String name) {
+        TypedArray typedArray = context.getTheme()
+                .obtainStyledAttributes(attrs, R.styleable.DigitalRain, defStyleAttr, defStyleRes);
+
+        // Initialize the drawing objects
+        Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        textPaint.setStyle(Paint.Style.FILL);
+
+        mRainRenderer = new RainRenderer(textPaint);
+        mRainSurface = new RainSurface(mRainRenderer, name);
+
+        float textSize;
+
+        try {
+            mRainRenderer.setAttributes(typedArray);
+            mRainSpeed = typedArray.getInt(R.styleable.DigitalRain_rainSpeed, RAIN_SPEED);
+            mAutoStart = typedArray.getBoolean(R.styleable.DigitalRain_android_autoStart, AUTO_START);
+            mTextColor = typedArray.getColorStateList(R.styleable.DigitalRain_android_textColor);
+            textSize = typedArray.getDimension(R.styleable.DigitalRain_android_textSize,
+                    DigitalRain.dpToPixels(context, TEXT_SIZE));
+        } finally {
+            typedArray.recycle();
+        }
+
+        // Provide some default colors
+        if (mTextColor == null) {
+            mTextColor = DigitalRain.getDefaultTextColor(context);
+        }
+
+        // Sanitize the input values
+        setRainSpeed(mRainSpeed);
+
+        textPaint.setTextSize(textSize);
+    }
+
+    /**
+     * Run the rain while the window is visible, if it starts automatically.
+     *
+     * @param visible True if the window is visible.
+     */
+    void setWindowVisible(boolean visible) {
+        if (mAutoStart) {
+            mRainSurface.setRunning(visible);
+        }
+    }
+
+    /**
+     * Pace the frames by the display the view is attached to.
+     *
+     * @param display Display of the view, if known.
+     */
+    void setDisplay(@Nullable Display display) {
+        if (display != null) {
+            mRainSurface.setRefreshRate(display.getRefreshRate());
+        }
+    }
+
+    /**
+     * Set the surface to draw to, or null once it is destroyed. This waits for any frame in
+     * progress.
+     *
+     * @param surface Surface to draw to.
+     * @param width   Width of the surface.
+     * @param height  Height of the surface.
+     */
+    void setSurface(@Nullable Surface surface, int width, int height) {
+        mRainSurface.setSurface(surface, width, height);
+    }
+
+    /**
+     * Start or stop the rain. The surface keeps the last frame while stopped.
+     *
+     * @param running True to render frames.
+     */
+    void setRunning(boolean running) {
+        mRainSurface.setRunning(running);
+    }
+
+    /**
+     * Check if the rain is running.
+     *
+     * @return True if running.
+     */
+    boolean isRunning() {
+        return mRainSurface.isRunning();
+    }
+
+    /**
+     * Get the renderer for the rain.
+     *
+     * @return Renderer for the rain.
+     */
+    @NonNull
+    RainRenderer getRainRenderer() {
+        return mRainRenderer;
+    }
+
+    /**
+     * Get the time interval in milliseconds for rain speed.
+     *
+     * @return Falling rain speed.
+     */
+    int getRainSpeed() {
+        return mRainSpeed;
+    }
+
+    /**
+     * Set the time interval in milliseconds for rain speed.
+     *
+     * @param rainSpeed Falling rain speed.
+     */
+    void setRainSpeed(int rainSpeed) {
+        mRainSpeed = Math.max(rainSpeed, 0);
+        mRainSurface.setRainSpeed(mRainSpeed);
+    }
+
+    /**
+     * Get the auto start status.
+     *
+     * @return Auto start status.
+     */
+    boolean isAutoStart() {
+        return mAutoStart;
+    }
+
+    /**
+     * Set the auto start status.
+     *
+     * @param autoStart Auto start status.
+     */
+    void setAutoStart(boolean autoStart) {
+        mAutoStart = autoStart;
+    }
+
+    /**
+     * Get the rain text color.
+     *
+     * @return ColorStateList color.
+     */
+    @NonNull
+    ColorStateList getTextColor() {
+        return mTextColor;
+    }
+
+    /**
+     * Set the rain text color, using the color for the current state of the view.
+     *
+     * @param textColor     ColorStateList color.
+     * @param drawableState Current state of the view.
+     */
+    void setTextColor(@NonNull ColorStateList textColor, int[] drawableState) {
+        mTextColor = textColor;
+
+        int statefulColor = textColor.getColorForState(drawableState, textColor.getDefaultColor());
+        mRainRenderer.setTextColor(statefulColor);
+    }
+
+    /**
+     * Get the rain text size.
+     *
+     * @return Size of the rain text.
+     */
+    float getTextSize() {
+        return mRainRenderer.getTextPaint().getTextSize();
+    }
+
+    /**
+     * Set the rain text size.
+     *
+     * @param textSize Size of the rain text.
+     */
+    void setTextSize(float textSize) {
+        mRainRenderer.getTextPaint().setTextSize(textSize);
+        mRainRenderer.requestLayout();
+    }
+}
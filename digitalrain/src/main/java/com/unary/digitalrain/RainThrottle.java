@@ -0,0 +1,243 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+import android.os.PowerManager;
+
+/**
+ * Rules for slowing down or pausing the rain to save power. Each rule can be turned off or tuned,
+ * and they are applied as the conditions of the view change.
+ *
+ * <ul>
+ * <li>Clipped: the rain pauses while none of the view is on screen, such as when it is scrolled
+ * away.</li>
+ * <li>Power save: the rain speed interval is scaled up while battery saver is on.</li>
+ * <li>Thermal: from Q, the interval is scaled up and layers are dropped once the device is at
+ * the thermal status given.</li>
+ * <li>Animator scale: the interval follows the system animator duration scale, and the rain
+ * pauses when animations are off.</li>
+ * </ul>
+ */
+public class RainThrottle {
+
+    private static final int POWER_SAVE_SPEED_SCALE = 2;
+    private static final int THERMAL_STATUS = PowerManager.THERMAL_STATUS_SEVERE;
+    private static final int THERMAL_SPEED_SCALE = 2;
+    private static final int THERMAL_INTENSITY = 1;
+
+    private boolean mClippedEnabled = true;
+    private boolean mPowerSaveEnabled = true;
+    private int mPowerSaveSpeedScale = POWER_SAVE_SPEED_SCALE;
+    private boolean mThermalEnabled = true;
+    private int mThermalStatus = THERMAL_STATUS;
+    private int mThermalSpeedScale = THERMAL_SPEED_SCALE;
+    private int mThermalIntensity = THERMAL_INTENSITY;
+    private boolean mAnimatorScaleEnabled = true;
+
+    /**
+     * Check if the rain pauses while it is clipped from the screen.
+     *
+     * @return True if the rule is on.
+     */
+    public boolean isClippedEnabled() {
+        return mClippedEnabled;
+    }
+
+    /**
+     * Set whether the rain pauses while it is clipped from the screen. Views covered by others
+     * that are not clipping it keep running.
+     *
+     * @param clippedEnabled True to turn the rule on.
+     */
+    public void setClippedEnabled(boolean clippedEnabled) {
+        mClippedEnabled = clippedEnabled;
+    }
+
+    /**
+     * Check if the rain slows down in power save mode.
+     *
+     * @return True if the rule is on.
+     */
+    public boolean isPowerSaveEnabled() {
+        return mPowerSaveEnabled;
+    }
+
+    /**
+     * Set whether the rain slows down in power save mode.
+     *
+     * @param powerSaveEnabled True to turn the rule on.
+     */
+    public void setPowerSaveEnabled(boolean powerSaveEnabled) {
+        mPowerSaveEnabled = powerSaveEnabled;
+    }
+
+    /**
+     * Get the scale of the rain speed interval in power save mode.
+     *
+     * @return Interval scale.
+     */
+    public int getPowerSaveSpeedScale() {
+        return mPowerSaveSpeedScale;
+    }
+
+    /**
+     * Set the scale of the rain speed interval in power save mode. A scale of 2 is half the rate.
+     *
+     * @param powerSaveSpeedScale Interval scale.
+     */
+    public void setPowerSaveSpeedScale(int powerSaveSpeedScale) {
+        mPowerSaveSpeedScale = Math.max(powerSaveSpeedScale, 1);
+    }
+
+    /**
+     * Check if the rain is throttled by the thermal status.
+     *
+     * @return True if the rule is on.
+     */
+    public boolean isThermalEnabled() {
+        return mThermalEnabled;
+    }
+
+    /**
+     * Set whether the rain is throttled by the thermal status. It is only available from Q.
+     *
+     * @param thermalEnabled True to turn the rule on.
+     */
+    public void setThermalEnabled(boolean thermalEnabled) {
+        mThermalEnabled = thermalEnabled;
+    }
+
+    /**
+     * Get the thermal status the rain is throttled at.
+     *
+     * @return Status from {@link PowerManager}.
+     */
+    public int getThermalStatus() {
+        return mThermalStatus;
+    }
+
+    /**
+     * Set the thermal status the rain is throttled at, such as {@link
+     * PowerManager#THERMAL_STATUS_SEVERE}. Any status above it is throttled too.
+     *
+     * @param thermalStatus Status from {@link PowerManager}.
+     */
+    public void setThermalStatus(int thermalStatus) {
+        mThermalStatus = thermalStatus;
+    }
+
+    /**
+     * Get the scale of the rain speed interval at the thermal status.
+     *
+     * @return Interval scale.
+     */
+    public int getThermalSpeedScale() {
+        return mThermalSpeedScale;
+    }
+
+    /**
+     * Set the scale of the rain speed interval at the thermal status.
+     *
+     * @param thermalSpeedScale Interval scale.
+     */
+    public void setThermalSpeedScale(int thermalSpeedScale) {
+        mThermalSpeedScale = Math.max(thermalSpeedScale, 1);
+    }
+
+    /**
+     * Get the most layers drawn at the thermal status.
+     *
+     * @return Layer count.
+     */
+    public int getThermalIntensity() {
+        return mThermalIntensity;
+    }
+
+    /**
+     * Set the most layers drawn at the thermal status.
+     *
+     * @param thermalIntensity Layer count.
+     */
+    public void setThermalIntensity(int thermalIntensity) {
+        mThermalIntensity = Math.max(thermalIntensity, 1);
+    }
+
+    /**
+     * Check if the rain follows the animator duration scale.
+     *
+     * @return True if the rule is on.
+     */
+    public boolean isAnimatorScaleEnabled() {
+        return mAnimatorScaleEnabled;
+    }
+
+    /**
+     * Set whether the rain follows the animator duration scale. Scales below 1 don't speed it up.
+     *
+     * @param animatorScaleEnabled True to turn the rule on.
+     */
+    public void setAnimatorScaleEnabled(boolean animatorScaleEnabled) {
+        mAnimatorScaleEnabled = animatorScaleEnabled;
+    }
+
+    /**
+     * Check if the rain is paused in the given conditions.
+     *
+     * @param clipped       True if none of the view is on screen.
+     * @param animatorScale Animator duration scale.
+     * @return True if paused.
+     */
+    boolean isPaused(boolean clipped, float animatorScale) {
+        return mClippedEnabled && clipped || mAnimatorScaleEnabled && animatorScale == 0;
+    }
+
+    /**
+     * Find the scale of the rain speed interval in the given conditions. The rules that apply are
+     * multiplied together.
+     *
+     * @param powerSaveMode True if battery saver is on.
+     * @param thermalStatus Thermal status of the device.
+     * @param animatorScale Animator duration scale.
+     * @return Interval scale of at least 1.
+     */
+    float getSpeedScale(boolean powerSaveMode, int thermalStatus, float animatorScale) {
+        float scale = 1;
+
+        if (mPowerSaveEnabled && powerSaveMode) {
+            scale *= mPowerSaveSpeedScale;
+        }
+
+        if (mThermalEnabled && thermalStatus >= mThermalStatus) {
+            scale *= mThermalSpeedScale;
+        }
+
+        if (mAnimatorScaleEnabled) {
+            scale *= Math.max(animatorScale, 1);
+        }
+
+        return scale;
+    }
+
+    /**
+     * Find the most layers drawn in the given conditions.
+     *
+     * @param thermalStatus Thermal status of the device.
+     * @return Layer count, or {@link Integer#MAX_VALUE} for no limit.
+     */
+    int getIntensityLimit(int thermalStatus) {
+        return mThermalEnabled && thermalStatus >= mThermalStatus ? mThermalIntensity : Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+/**
+ * Keeps the rain on a fixed timestep, whatever the display refresh rate. Time is added as it
+ * passes and taken in whole steps of the rain speed, with the remainder carried to the next frame.
+ * Only a few steps are kept waiting, so a stall is dropped rather than caught up all at once.
+ */
+class RainTimestep {
+
+    static final int MAX_STEPS = 4;
+
+    private long mTime;
+
+    /**
+     * Start again with the given time waiting.
+     *
+     * @param time Time to start with, in milliseconds.
+     */
+    void reset(long time) {
+        mTime = Math.max(time, 0);
+    }
+
+    /**
+     * Add the time passed. Anything beyond the steps that can be caught up is dropped.
+     *
+     * @param deltaTime Time passed in milliseconds.
+     * @param interval  Time for each step in milliseconds.
+     * @return Number of steps dropped.
+     */
+    int add(long deltaTime, int interval) {
+        mTime += Math.max(deltaTime, 0);
+
+        if (interval <= 0) return 0;
+
+        long excess = mTime - (long) MAX_STEPS * interval;
+
+        if (excess < interval) return 0;
+
+        int dropped = (int) (excess / interval);
+        mTime -= (long) dropped * interval;
+
+        return dropped;
+    }
+
+    /**
+     * Take the steps that are due, up to the most that can be caught up in one frame. Without an
+     * interval, any time passed is a single step.
+     *
+     * @param interval Time for each step in milliseconds.
+     * @return Number of steps to run.
+     */
+    int takeSteps(int interval) {
+        if (interval <= 0) {
+            int steps = mTime > 0 ? 1 : 0;
+            mTime = 0;
+
+            return steps;
+        }
+
+        int steps = (int) Math.min(mTime / interval, MAX_STEPS);
+        mTime -= (long) steps * interval;
+
+        return steps;
+    }
+
+    /**
+     * Get the time left until the next step is due.
+     *
+     * @param interval Time for each step in milliseconds.
+     * @return Time in milliseconds, or 0 if a step is due.
+     */
+    long getTimeUntilStep(int interval) {
+        return Math.max(interval - mTime, 0);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Trace sections and counters for the rain, so the frames show up in system traces. These do
+ * nothing on versions without the APIs, and very little while tracing is off.
+ */
+final class RainTrace {
+
+    static final String RENDER = "DigitalRain:render";
+    static final String FADE = "DigitalRain:fade";
+    static final String LAYERS = "DigitalRain:layers";
+    static final String PUBLISH = "DigitalRain:publish";
+    static final String SKIPPED = "DigitalRain:skipped";
+    static final String QUALITY = "DigitalRain:quality";
+
+    private RainTrace() {
+    }
+
+    /**
+     * Begin a section on the current thread. The name must be a constant, so nothing is allocated.
+     *
+     * @param name Name of the section.
+     */
+    static void beginSection(String name) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(name);
+        }
+    }
+
+    /**
+     * End the last section begun on the current thread.
+     */
+    static void endSection() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Set the value of a counter.
+     *
+     * @param name  Name of the counter.
+     * @param value Value to set.
+     */
+    static void setCounter(String name, long value) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.setCounter(name, value);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+/**
+ * A fixed pool of threads that run one task each per frame, alongside the calling thread. Nothing
+ * is allocated or queued per frame, the workers simply wait for the next generation of tasks.
+ * A task that throws does not stop its worker, and the exception is thrown again by the caller.
+ */
+class RainWorkers {
+
+    private final Thread[] mThreads;
+    private Runnable[] mTasks;
+    private int mGeneration;
+    private int mPending;
+    private boolean mQuit;
+    private Throwable mFailure;
+
+    /**
+     * Constructor to start the worker threads.
+     *
+     * @param count Number of threads besides the caller.
+     */
+    RainWorkers(int count) {
+        mThreads = new Thread[count];
+
+        for (int i = 0; i < count; i++) {
+            final int index = i + 1;
+
+            mThreads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    loop(index);
+                }
+            }, "DigitalRain-" + index);
+
+            mThreads[i].setDaemon(true);
+            mThreads[i].start();
+        }
+    }
+
+    /**
+     * Get the number of tasks run for each call to {@link #execute(Runnable[])}.
+     *
+     * @return Task count, including the caller.
+     */
+    int getTaskCount() {
+        return mThreads.length + 1;
+    }
+
+    /**
+     * Run the tasks and wait for all of them to finish. The first task is run on the calling
+     * thread, the rest on a worker each, and any workers without a task stay idle. The first
+     * exception thrown by a task is thrown from here, once all of them have finished.
+     *
+     * @param tasks Tasks to run. There must be at least one, and at most one for each thread.
+     */
+    void execute(Runnable[] tasks) {
+        synchronized (this) {
+            // Workers may be gone
+            if (mQuit) {
+                for (Runnable task : tasks) {
+                    task.run();
+                }
+
+                return;
+            }
+
+            mTasks = tasks;
+            mPending = Math.min(mThreads.length, tasks.length - 1);
+            mGeneration++;
+            notifyAll();
+        }
+
+        boolean interrupted = false;
+        Throwable failure;
+
+        try {
+            tasks[0].run();
+        } finally {
+            synchronized (this) {
+                while (mPending > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+
+                failure = mFailure;
+                mFailure = null;
+                mTasks = null;
+            }
+
+            // Don't swallow it
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+    }
+
+    /**
+     * Stop the worker threads once they finish any tasks in progress.
+     */
+    void quit() {
+        synchronized (this) {
+            mQuit = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Worker loop that waits for a new generation of tasks and runs its own one.
+     *
+     * @param index Index of the task for this worker.
+     */
+    private void loop(int index) {
+        int generation = 0;
+
+        while (true) {
+            Runnable task;
+
+            synchronized (this) {
+                while (mGeneration == generation && !mQuit) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // Only quit() stops the worker
+                    }
+                }
+
+                // Finish the last tasks before quitting
+                if (mGeneration == generation) return;
+
+                generation = mGeneration;
+                task = index < mTasks.length ? mTasks[index] : null;
+            }
+
+            // Not needed for this generation
+            if (task == null) continue;
+
+            try {
+                task.run();
+            } catch (Throwable t) {
+                // Passed back to the caller, as a dead worker would never finish its next task
+                synchronized (this) {
+                    if (mFailure == null) {
+                        mFailure = t;
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    if (--mPending == 0) {
+                        notifyAll();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2021 Christopher Zaborsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.unary.digitalrain;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.Choreographer;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Drives any number of {@link DigitalRain} views from one ticker aligned to the display frames,
+ * with one render thread and one pool of workers between them. Views with the same text settings
+ * also share their rendered characters. The ticker stops while none of the views are visible.
+ *
+ * <p>Set it with {@link DigitalRain#setSharedEngine(SharedRainEngine)}. The animators of the
+ * views are not used while it is set.</p>
+ */
+public class SharedRainEngine implements Choreographer.FrameCallback, Runnable {
+
+    private static final int MAX_THREADS = 4;
+    private static final int MIN_PARALLEL_CORES = 4;
+
+    private static SharedRainEngine sInstance;
+
+    private volatile DigitalRain[] mViews;
+    private GlyphAtlasCache mAtlasCache;
+    private RainWorkers mRainWorkers;
+    private HandlerThread mRenderThread;
+    private Handler mRenderHandler;
+    private long mFrameTime;
+    private boolean mTicking;
+    private volatile boolean mRendering;
+    private final Object mViewLock = new Object();
+
+    /**
+     * Constructor for an engine separate from the shared instance.
+     */
+    public SharedRainEngine() {
+        mViews = new DigitalRain[0];
+        mAtlasCache = new GlyphAtlasCache();
+    }
+
+    /**
+     * Get the engine shared by the whole process.
+     *
+     * @return The shared engine.
+     */
+    @MainThread
+    @NonNull
+    public static SharedRainEngine getInstance() {
+        if (sInstance == null) {
+            sInstance = new SharedRainEngine();
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Add a view to be driven by the engine. The render thread and workers are started with the
+     * first one.
+     *
+     * @param view View to add.
+     */
+    @MainThread
+    void attach(DigitalRain view) {
+        if (mRenderThread == null) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            int threads = cores < MIN_PARALLEL_CORES ? 1 : Math.min(cores - 1, MAX_THREADS);
+
+            mRenderThread = new HandlerThread("DigitalRain-Shared");
+            mRenderThread.start();
+            mRenderHandler = new Handler(mRenderThread.getLooper());
+            mRainWorkers = new RainWorkers(threads - 1);
+        }
+
+        DigitalRain[] views = Arrays.copyOf(mViews, mViews.length + 1);
+        views[mViews.length] = view;
+        mViews = views;
+
+        view.getRainRenderer().setSharedResources(mRainWorkers, mAtlasCache);
+        wake();
+    }
+
+    /**
+     * Run a task on the render thread, between frames.
+     *
+     * @param task Task to run.
+     * @return True if the task was posted.
+     */
+    @MainThread
+    boolean post(Runnable task) {
+        return mRenderHandler != null && mRenderHandler.post(task);
+    }
+
+    /**
+     * Drop the cached characters. Views keep the ones they are using.
+     */
+    @MainThread
+    void trimMemory() {
+        mAtlasCache.clear();
+    }
+
+    /**
+     * Remove a view from the engine. Everything is stopped and released with the last one. This
+     * waits for any frame of the view in progress, and no frame is rendered for it afterwards.
+     *
+     * @param view View to remove.
+     */
+    @MainThread
+    void detach(DigitalRain view) {
+        int index = Arrays.asList(mViews).indexOf(view);
+
+        if (index < 0) return;
+
+        DigitalRain[] views = new DigitalRain[mViews.length - 1];
+        System.arraycopy(mViews, 0, views, 0, index);
+        System.arraycopy(mViews, index + 1, views, index, views.length - index);
+
+        // Frames already posted skip the view from here
+        synchronized (mViewLock) {
+            mViews = views;
+        }
+
+        view.getRainRenderer().setSharedResources(null, null);
+
+        if (views.length == 0 && mRenderThread != null) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            mTicking = false;
+            mRendering = false;
+
+            // Nothing else runs before the thread quits
+            mRenderHandler.removeCallbacksAndMessages(null);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                mRenderThread.quitSafely();
+            } else {
+                mRenderThread.quit();
+            }
+
+            mRainWorkers.quit();
+            mAtlasCache.clear();
+
+            mRenderThread = null;
+            mRenderHandler = null;
+            mRainWorkers = null;
+        }
+    }
+
+    /**
+     * Start the ticker again if any of the views has become visible.
+     */
+    @MainThread
+    void wake() {
+        if (mTicking || mRenderHandler == null) return;
+
+        for (DigitalRain view : mViews) {
+            if (view.isRainVisible()) {
+                mTicking = true;
+                mFrameTime = 0;
+
+                Choreographer.getInstance().postFrameCallback(this);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        // Whole milliseconds of each frame time, so no fractions are lost between frames
+        long deltaTime = mFrameTime == 0 ? 0 : frameTimeNanos / 1000000 - mFrameTime / 1000000;
+        boolean visible = false;
+        boolean due = false;
+
+        mFrameTime = frameTimeNanos;
+
+        for (DigitalRain view : mViews) {
+            if (!view.isRainVisible()) continue;
+
+            visible = true;
+            view.tick(deltaTime);
+            due |= view.isFramePending();
+        }
+
+        // One pass renders every view that is due
+        if (due && !mRendering) {
+            mRendering = true;
+            mRenderHandler.post(this);
+        }
+
+        // Pause while nothing can be seen
+        if (visible) {
+            Choreographer.getInstance().postFrameCallback(this);
+        } else {
+            mTicking = false;
+        }
+    }
+
+    @Override
+    public void run() {
+        for (DigitalRain view : mViews) {
+            synchronized (mViewLock) {
+                // Detached since the frame was posted
+                if (view.isFramePending() && contains(mViews, view)) {
+                    view.run();
+                }
+            }
+        }
+
+        mRendering = false;
+    }
+
+    /**
+     * Check if a view is in a list, without allocating.
+     *
+     * @param views List of views.
+     * @param view  View to find.
+     * @return True if found.
+     */
+    private static boolean contains(DigitalRain[] views, DigitalRain view) {
+        for (DigitalRain other : views) {
+            if (other == view) return true;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,85 @@
+package com.unary.digitalrain;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the quality steps of the rain governor.
+ */
+public class RainGovernorTest {
+    @Test
+    public void update_stepsDownWhenOverBudget() {
+        RainGovernor governor = new RainGovernor();
+        governor.setMaxLevel(3);
+
+        for (int i = 0; i < 10; i++) {
+            governor.update(100, 100);
+        }
+
+        assertEquals(1, governor.getLevel());
+    }
+
+    @Test
+    public void update_holdsLevelBetweenThresholds() {
+        RainGovernor governor = new RainGovernor();
+        governor.setMaxLevel(3);
+
+        for (int i = 0; i < 10; i++) {
+            governor.update(100, 100);
+        }
+
+        // Inside the gap, so no change either way
+        for (int i = 0; i < 5000; i++) {
+            governor.update(60, 100);
+        }
+
+        assertEquals(1, governor.getLevel());
+    }
+
+    @Test
+    public void update_stepsUpWithHeadroom() {
+        RainGovernor governor = new RainGovernor();
+        governor.setMaxLevel(3);
+
+        for (int i = 0; i < 10; i++) {
+            governor.update(100, 100);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            governor.update(10, 100);
+        }
+
+        assertEquals(0, governor.getLevel());
+    }
+
+    @Test
+    public void update_neverPassesMaxLevel() {
+        RainGovernor governor = new RainGovernor();
+        governor.setMaxLevel(2);
+
+        for (int i = 0; i < 1000; i++) {
+            governor.update(1000, 100);
+        }
+
+        assertEquals(2, governor.getLevel());
+    }
+
+    @Test
+    public void reset_returnsToFullQualityAndSettles() {
+        RainGovernor governor = new RainGovernor();
+        governor.setMaxLevel(3);
+
+        for (int i = 0; i < 10; i++) {
+            governor.update(100, 100);
+        }
+
+        governor.reset();
+        assertEquals(0, governor.getLevel());
+
+        // Frames right after the reset are ignored
+        for (int i = 0; i < 30; i++) {
+            assertFalse(governor.update(100, 100));
+        }
+    }
+}
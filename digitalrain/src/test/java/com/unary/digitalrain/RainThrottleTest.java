@@ -0,0 +1,43 @@
+package com.unary.digitalrain;
+
+import android.os.PowerManager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the rules of the rain throttle.
+ */
+public class RainThrottleTest {
+    @Test
+    public void getSpeedScale_multipliesRules() {
+        RainThrottle throttle = new RainThrottle();
+
+        assertEquals(1, throttle.getSpeedScale(false, PowerManager.THERMAL_STATUS_NONE, 1), 0);
+        assertEquals(4, throttle.getSpeedScale(true, PowerManager.THERMAL_STATUS_SEVERE, 0.5f), 0);
+    }
+
+    @Test
+    public void getIntensityLimit_dropsLayersWhenHot() {
+        RainThrottle throttle = new RainThrottle();
+
+        assertEquals(Integer.MAX_VALUE, throttle.getIntensityLimit(PowerManager.THERMAL_STATUS_MODERATE));
+        assertEquals(1, throttle.getIntensityLimit(PowerManager.THERMAL_STATUS_CRITICAL));
+
+        throttle.setThermalEnabled(false);
+        assertEquals(Integer.MAX_VALUE, throttle.getIntensityLimit(PowerManager.THERMAL_STATUS_CRITICAL));
+    }
+
+    @Test
+    public void isPaused_followsEnabledRules() {
+        RainThrottle throttle = new RainThrottle();
+
+        assertTrue(throttle.isPaused(true, 1));
+        assertTrue(throttle.isPaused(false, 0));
+
+        throttle.setClippedEnabled(false);
+        throttle.setAnimatorScaleEnabled(false);
+        assertFalse(throttle.isPaused(true, 0));
+    }
+}
@@ -0,0 +1,42 @@
+package com.unary.digitalrain;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the fixed steps of the rain timestep.
+ */
+public class RainTimestepTest {
+    @Test
+    public void takeSteps_carriesRemainder() {
+        RainTimestep timestep = new RainTimestep();
+        int steps = 0;
+
+        // 120 Hz frames for one second of 100 ms steps
+        for (int i = 0; i < 120; i++) {
+            timestep.add(i % 3 == 2 ? 9 : 8, 100);
+            steps += timestep.takeSteps(100);
+        }
+
+        assertEquals(10, steps);
+    }
+
+    @Test
+    public void takeSteps_catchesUpToLimit() {
+        RainTimestep timestep = new RainTimestep();
+
+        assertEquals(0, timestep.add(250, 100));
+        assertEquals(2, timestep.takeSteps(100));
+        assertEquals(50, timestep.getTimeUntilStep(100));
+    }
+
+    @Test
+    public void add_dropsStall() {
+        RainTimestep timestep = new RainTimestep();
+
+        assertEquals(6, timestep.add(1050, 100));
+        assertEquals(RainTimestep.MAX_STEPS, timestep.takeSteps(100));
+        assertEquals(0, timestep.takeSteps(100));
+    }
+}
@@ -0,0 +1,62 @@
+package com.unary.digitalrain;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the worker threads of the rain strips.
+ */
+public class RainWorkersTest {
+    @Test
+    public void execute_rethrowsAndKeepsWorkers() {
+        RainWorkers workers = new RainWorkers(1);
+        final AtomicInteger runs = new AtomicInteger();
+        Runnable count = new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        };
+        Runnable fail = new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException();
+            }
+        };
+
+        try {
+            workers.execute(new Runnable[]{count, fail});
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected from the worker
+        }
+
+        // Would wait forever for a dead worker
+        workers.execute(new Runnable[]{count, count});
+        workers.quit();
+
+        assertEquals(3, runs.get());
+    }
+
+    @Test
+    public void execute_leavesSpareWorkersIdle() {
+        RainWorkers workers = new RainWorkers(3);
+        final AtomicInteger runs = new AtomicInteger();
+        Runnable count = new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        };
+
+        // Would wait forever for workers without a task
+        workers.execute(new Runnable[]{count, count});
+        workers.execute(new Runnable[]{count, count, count, count});
+        workers.quit();
+
+        assertEquals(6, runs.get());
+    }
+}